@@ -0,0 +1,42 @@
+import java.lang.management.ManagementFactory;
+
+// Plays rounds through Table/GameManager on the current thread and measures the bytes
+// allocated per round with the JVM's per-thread allocation counter. Exits with status 1
+// when the average goes over the budget, so a build script can fail on GC regressions.
+//
+//   java AllocationBudget [budgetBytesPerRound] [rounds] [playersPerTable]
+public class AllocationBudget {
+
+    // Measured at about 24 KB per round with 4 players; raise it only on purpose
+    public static final long DEFAULT_BUDGET = 32 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        long budget = (args.length > 0) ? Long.parseLong(args[0]) : DEFAULT_BUDGET;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int players = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation counters are not supported by this JVM, skipping.");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // The history is shared so its first chunk is already allocated by the warm-up
+        Simulation simulation = new Simulation(players, rounds, new HandHistory(1));
+        simulation.runTable("warmup", 1);
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        simulation.runTable("measured", 2);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        long perRound = allocated / rounds;
+        System.out.printf("%d rounds, %d players: %d bytes allocated per round (budget %d)%n",
+                rounds, players, perRound, budget);
+        if (perRound > budget) {
+            System.out.println("FAILED: allocation budget exceeded by " + (perRound - budget) + " bytes per round");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+// A headless player that hits below a fixed total and stands otherwise. It reacts to
+// the same protocol lines the Swing Client reads.
+public class BotPlayer {
+    private Transport transport;
+    private String name;
+    private int standOn;
+    private int[] scores; // One per hand
+    private boolean indexedHands; // Hand messages carry an index once the server grants HANDS
+    private long checksum = 1;
+
+    public BotPlayer(Transport transport, String name, int standOn) {
+        this(transport, name, standOn, 1);
+    }
+
+    public BotPlayer(Transport transport, String name, int standOn, int hands) {
+        this.transport = transport;
+        this.name = name;
+        this.standOn = standOn;
+        this.scores = new int[hands];
+    }
+
+    public void join() throws IOException {
+        send(name);
+        if (scores.length > 1) {
+            send("HANDS " + scores.length);
+        }
+    }
+
+    public void onMessage(String line) throws IOException {
+        checksum = checksum * 31 + line.hashCode();
+        if (line.startsWith("SEQ ")) {
+            line = line.substring(line.indexOf(' ', 4) + 1);
+        }
+        if (line.startsWith("INITIAL_CARDS ") || line.startsWith("NEW_CARD ")) {
+            scores[hand(line)] = Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1));
+        } else if (line.equals("CLEAR_HAND")) {
+            Arrays.fill(scores, 0);
+        } else if (line.startsWith("HANDS ")) {
+            indexedHands = true;
+        } else if (line.startsWith("YOUR_TURN")) {
+            int hand = hand(line);
+            String action = scores[hand] < standOn ? "HIT" : "STAND";
+            send(indexedHands ? action + " " + hand : action);
+        }
+    }
+
+    // The hand a message is about: its second word once hands are indexed, otherwise the only hand
+    private int hand(String line) {
+        if (!indexedHands) {
+            return 0;
+        }
+        int start = line.indexOf(' ') + 1;
+        int end = line.indexOf(' ', start);
+        return Integer.parseInt(end < 0 ? line.substring(start) : line.substring(start, end));
+    }
+
+    // Reads and handles lines until the server closes the connection
+    public void run() throws IOException {
+        String line;
+        while ((line = transport.readLine()) != null) {
+            onMessage(line);
+        }
+    }
+
+    // Running hash of every line received, to check that two runs saw the same game
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void send(String line) throws IOException {
+        transport.write(ClientHandler.encode(line));
+    }
+
+    // A bot in its own process on the server's host, connected through shared memory:
+    //   java BotPlayer [shmDir] [name] [standOn] [hands]
+    public static void main(String[] args) throws IOException {
+        String dir = (args.length > 0) ? args[0] : "shm";
+        String name = (args.length > 1) ? args[1] : "bot-" + ProcessHandle.current().pid();
+        int standOn = (args.length > 2) ? Integer.parseInt(args[2]) : 17;
+        int hands = (args.length > 3) ? Integer.parseInt(args[3]) : 1;
+        Transport transport = SharedMemoryTransport.connect(Paths.get(dir));
+        BotPlayer bot = new BotPlayer(transport, name, standOn, hands);
+        bot.join();
+        try {
+            bot.run();
+        } finally {
+            transport.close();
+        }
+        System.out.println(name + " done, checksum " + Long.toHexString(bot.getChecksum()));
+    }
+}
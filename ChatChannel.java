@@ -0,0 +1,71 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+// Chat is kept off the game event stream. Messages are queued and flushed once per
+// tick as a single frame, so a burst of chat costs one write per recipient per tick
+// and never holds up game events.
+public class ChatChannel {
+    private static final long TICK_MILLIS = 200;
+    private static final int MAX_LINES_PER_TICK = 20;
+    private static final int MAX_MESSAGE_LENGTH = 200;
+
+    // One ticker thread flushes the chat of every table in the process. Table.broadcastFrame only
+    // queues the frame for each recipient, so one table's slow sockets can't delay another's chat.
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chat-tick");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Table table;
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final ScheduledFuture<?> tick;
+
+    public ChatChannel(Table table) {
+        this.table = table;
+        tick = TICKER.scheduleAtFixedRate(this::flush, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        tick.cancel(false);
+    }
+
+    public void post(String playerName, String text) {
+        if (text.length() > MAX_MESSAGE_LENGTH) {
+            text = text.substring(0, MAX_MESSAGE_LENGTH);
+        }
+        pending.add("CHAT " + playerName + ": " + text + "\n");
+    }
+
+    // An exception escaping a scheduled task would cancel it, and chat would go quiet for good
+    private void flush() {
+        try {
+            flushPending();
+        } catch (RuntimeException e) {
+            table.log("Error flushing chat: " + e);
+        }
+    }
+
+    private void flushPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        int lines = 0;
+        String line;
+        while (lines < MAX_LINES_PER_TICK && (line = pending.poll()) != null) {
+            sb.append(line);
+            lines++;
+        }
+        // Whatever did not fit in this tick is dropped rather than delayed
+        int dropped = 0;
+        while (pending.poll() != null) {
+            dropped++;
+        }
+        if (dropped > 0) {
+            sb.append("CHAT * ").append(dropped).append(" messages dropped\n");
+        }
+        table.broadcastFrame(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
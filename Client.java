@@ -8,7 +8,11 @@ import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.nio.charset.StandardCharsets;
 
 public class Client extends JFrame {
 
@@ -17,6 +21,8 @@ public class Client extends JFrame {
     private PrintWriter out;
     private String serverAddress;
     private int serverPort;
+    private boolean spectating;
+    private String playerName; // Asked once and sent again when the table moves to another server
 
     private JTextPane messageArea;
     private JTextField inputField;
@@ -27,6 +33,11 @@ public class Client extends JFrame {
     private JLabel[] playerCardLabels = new JLabel[11];
 
     private JPanel playerPanel;
+    private JPanel handsPanel;
+    private ArrayList<JPanel> handPanels = new ArrayList<>(); // playerPanel is hand 0
+    private int handsWanted = Integer.getInteger("blackjack.hands", 1);
+    private boolean indexedHands; // Hand messages carry an index once the server grants HANDS
+    private int turnHand; // The hand the current YOUR_TURN is for
     private JPanel dealerPanel;
     private JPanel controlPanel;
     private JPanel messagePanel;
@@ -40,23 +51,41 @@ public class Client extends JFrame {
     private HashMap<String, ImageIcon> cardImages = new HashMap<>();
     private String imageFolderPath = "./images/";
     private boolean dealerHasFirstCard = false;
+    private long lastSeq = -1; // Last public event applied, -1 until the first event or snapshot
 
-    public Client(String serverAddress, int port) {
+    public Client(String serverAddress, int port, boolean spectating) {
         this.serverAddress = serverAddress;
         this.serverPort = port;
+        this.spectating = spectating;
         setupGUI();
-        connectToServer();
+        if (spectating) {
+            watchServer();
+        } else {
+            connectToServer();
+        }
         getCardImage();
     }
 
     private void connectToServer() {
+        // Ask before connecting: the server only waits a few seconds for the name
+        askName();
         try {
             Socket initialSocket = new Socket(serverAddress, serverPort);
             BufferedReader initialIn = new BufferedReader(new InputStreamReader(initialSocket.getInputStream()));
             PrintWriter initialOut = new PrintWriter(initialSocket.getOutputStream(), true);
 
             String response = initialIn.readLine();
-            if (response.startsWith("NEW_PORT ")) {
+            if (response.startsWith("NEW_PORT ") && response.indexOf(':') > 0) {
+                // The router hands us off to the table that owns our seat; redo the handshake there
+                String target = response.substring("NEW_PORT ".length());
+                showMessage("Router sent us to table " + target);
+                initialIn.close();
+                initialOut.close();
+                initialSocket.close();
+                serverAddress = target.substring(0, target.lastIndexOf(':'));
+                serverPort = Integer.parseInt(target.substring(target.lastIndexOf(':') + 1));
+                connectToServer();
+            } else if (response.startsWith("NEW_PORT ")) {
                 int newPort = Integer.parseInt(response.substring("NEW_PORT ".length()));
                 showMessage("Server requested new connection on port: " + newPort);
                 initialIn.close();
@@ -80,16 +109,37 @@ public class Client extends JFrame {
         }
     }
 
+    private void watchServer() {
+        try {
+            setTitle("Blackjack Spectator");
+            inputField.setEnabled(false);
+            askName();
+            // Each table serves spectators one port below its initial port
+            socket = new Socket(serverAddress, serverPort - 1);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            out = new PrintWriter(socket.getOutputStream(), true);
+
+            sendMessage(askName());
+
+            new Thread(this::receiveMessages).start();
+
+        } catch (IOException e) {
+            showMessage("Can't connect to spectator port " + (serverPort - 1) + ": " + e.getMessage());
+        }
+    }
+
     private void establishMainConnection(int port) {
         try {
             socket = new Socket(serverAddress, port);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
             out = new PrintWriter(socket.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(negotiateCompression(socket.getInputStream())));
 
             new Thread(this::receiveMessages).start();
 
-            String name = JOptionPane.showInputDialog("Enter your name:");
-            sendMessage(name);
+            sendMessage(askName());
+            if (handsWanted > 1) {
+                sendMessage("HANDS " + handsWanted);
+            }
 
         } catch (IOException e) {
             showMessage("Can't connect to server on port " + port + ": " + e.getMessage());
@@ -98,6 +148,51 @@ public class Client extends JFrame {
         }
     }
 
+    // Asks for a deflated event stream unless -Dblackjack.compress=false. The answer is read a
+    // byte at a time, so nothing compressed is buffered before the Inflater is in place.
+    private InputStream negotiateCompression(InputStream raw) throws IOException {
+        if ("false".equals(System.getProperty("blackjack.compress"))) {
+            return raw;
+        }
+        sendMessage("COMPRESS deflate");
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        int b;
+        while ((b = raw.read()) != -1 && b != '\n') {
+            reply.write(b);
+        }
+        if (reply.toString(StandardCharsets.UTF_8).equals("COMPRESS_OK")) {
+            return new InflaterInputStream(raw, new Inflater(), 512) {
+                // The default says 1 until the end of the stream, which makes the reader
+                // above wait for more bytes instead of handing over the line it has
+                @Override
+                public int available() {
+                    return 0;
+                }
+            };
+        }
+        return raw;
+    }
+
+    private String askName() {
+        if (playerName == null) {
+            playerName = JOptionPane.showInputDialog("Enter your name:");
+        }
+        return playerName;
+    }
+
+    // The server handed our table to another server mid-game: join it there under the same name
+    private void moveTo(String target) {
+        showMessage("Table moved to " + target + ", reconnecting");
+        serverAddress = target.substring(0, target.lastIndexOf(':'));
+        serverPort = Integer.parseInt(target.substring(target.lastIndexOf(':') + 1));
+        lastSeq = -1;
+        if (spectating) {
+            watchServer();
+        } else {
+            connectToServer();
+        }
+    }
+
     private void setupGUI() {
         setTitle("Blackjack Client");
         setSize(800, 600);
@@ -112,11 +207,14 @@ public class Client extends JFrame {
         playerPanel.setLayout(new FlowLayout(FlowLayout.CENTER));
         playerPanel.setLayout(new FlowLayout(FlowLayout.CENTER, cardSpacing, 10));
         playerPanel.setBorder(BorderFactory.createTitledBorder("Your Hand"));
+        handPanels.add(playerPanel);
+        handsPanel = new JPanel(new GridLayout(1, 0));
+        handsPanel.add(playerPanel);
         gbc.gridx = 0;
         gbc.gridy = 1;
         gbc.weightx = 1;
         gbc.weighty = 0.2;
-        add(playerPanel, gbc);
+        add(handsPanel, gbc);
 
         dealerPanel = new JPanel();
         dealerPanel.setLayout(new FlowLayout(FlowLayout.CENTER));
@@ -144,7 +242,7 @@ public class Client extends JFrame {
 
         hitButton.addActionListener(e -> {
             if (isMyTurn) {
-                sendMessage("HIT");
+                sendMessage(indexedHands ? "HIT " + turnHand : "HIT");
             } else {
                 showMessage("NOT YOUR TURN");
             }
@@ -152,7 +250,7 @@ public class Client extends JFrame {
 
         standButton.addActionListener(e -> {
             if (isMyTurn) {
-                sendMessage("STAND");
+                sendMessage(indexedHands ? "STAND " + turnHand : "STAND");
             } else {
                 showMessage("NOT YOUR TURN");
             }
@@ -170,16 +268,20 @@ public class Client extends JFrame {
         gbc.weighty = 0.3;
         add(messagePanel, gbc);
 
-        // inputField = new JTextField();
-        // inputField.addActionListener(e -> {
-        // sendMessage(inputField.getText().toLowerCase());
-        // inputField.setText("");
-        // });
-        // gbc.gridx = 0;
-        // gbc.gridy = 4;
-        // gbc.weightx = 1;
-        // gbc.weighty = 0.1;
-        // add(inputField, gbc);
+        inputField = new JTextField();
+        inputField.setBorder(BorderFactory.createTitledBorder("Chat"));
+        inputField.addActionListener(e -> {
+            String text = inputField.getText().trim();
+            if (!text.isEmpty()) {
+                sendMessage("CHAT " + text);
+            }
+            inputField.setText("");
+        });
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        gbc.weightx = 1;
+        gbc.weighty = 0.1;
+        add(inputField, gbc);
 
         dealerCardLabel = new JLabel("Dealer: ?");
         dealerPanel.add(dealerCardLabel);
@@ -193,26 +295,87 @@ public class Client extends JFrame {
     }
 
     private void receiveMessages() {
+        // A handoff replaces the connection fields, so this reader keeps hold of its own
+        Socket socket = this.socket;
+        BufferedReader in = this.in;
+        PrintWriter out = this.out;
+        String handoffTarget = null;
         try {
             String line;
             hitButton.setEnabled(false);
             standButton.setEnabled(false);
             while ((line = in.readLine()) != null) {
+                if (line.startsWith("NEW_PORT ") && line.indexOf(':') > 0) {
+                    handoffTarget = line.substring("NEW_PORT ".length());
+                    break;
+                }
+                if (line.startsWith("SEQ ")) {
+                    int space = line.indexOf(' ', 4);
+                    long seq = Long.parseLong(line.substring(4, space));
+                    if (seq <= lastSeq) {
+                        continue; // Already covered by a snapshot
+                    }
+                    if (lastSeq >= 0 && seq != lastSeq + 1) {
+                        showMessage("Missed events " + (lastSeq + 1) + "-" + (seq - 1) + ", resyncing");
+                        if (!spectating) {
+                            sendMessage("RESYNC");
+                        }
+                    }
+                    lastSeq = seq;
+                    line = line.substring(space + 1);
+                } else if (line.startsWith("SNAPSHOT ")) {
+                    int space = line.indexOf(' ', 9);
+                    lastSeq = Long.parseLong(space < 0 ? line.substring(9) : line.substring(9, space));
+                }
                 final String message = line;
                 SwingUtilities.invokeLater(() -> {
-                    if (message.equals("GAME_START")) {
+                    if (message.startsWith("CHAT ")) {
+                        // Chat never changes game state, so the turn buttons are left alone
+                        showMessage(message.substring("CHAT ".length()));
+                    } else if (message.equals("CHAT_RATE_LIMITED")) {
+                        showMessage("You are chatting too fast, message dropped.");
+                    } else if (message.startsWith("DEALER_ODDS ")) {
+                        showMessage("Dealer odds " + message.substring("DEALER_ODDS ".length()));
+                    } else if (message.startsWith("WAITLISTED ")) {
+                        showMessage("The table is full. You will be seated at the next round (waitlist position "
+                                + message.substring("WAITLISTED ".length()) + ").");
+                    } else if (message.startsWith("PROFILE ")) {
+                        // PROFILE <hands> <wins> <losses> <pushes> <bankroll>
+                        String[] stats = message.split(" ");
+                        showMessage("Welcome! Hands played: " + stats[1] + ", wins: " + stats[2] + ", losses: "
+                                + stats[3] + ", pushes: " + stats[4] + ", bankroll: " + stats[5]);
+                    } else if (message.startsWith("RANK ")) {
+                        // RANK <rank> <players> <points>
+                        String[] rank = message.split(" ");
+                        showMessage("Tournament rank " + rank[1] + " of " + rank[2] + " with " + rank[3] + " points.");
+                    } else if (message.startsWith("TOP ")) {
+                        showMessage("Tournament leaders: " + message.substring("TOP ".length()));
+                    } else if (message.equals("SPECTATING")) {
+                        showMessage("You are watching the table.");
+                    } else if (message.equals("GAME_START")) {
                         showMessage("START!");
                         isMyTurn = false;
                         updateControlButtons();
                         clearHands();
                         dealerHasFirstCard = false;
                         dealerCardLabel.setText("Dealer: ?");
+                    } else if (message.startsWith("HANDS ")) {
+                        indexedHands = true;
+                        showMessage("Playing " + message.substring("HANDS ".length()) + " hands from the next deal.");
                     } else if (message.startsWith("INITIAL_CARDS")) {
                         String[] cards = message.substring("INITIAL_CARDS ".length()).split(" ");
-                        displayInitialCards(cards);
+                        displayPlayerHand(handOf(cards), withoutHand(cards));
                     } else if (message.startsWith("NEW_CARD")) {
-                        String cardStr = message.substring("NEW_CARD ".length());
-                        addCardToPlayer(cardStr);
+                        String[] delta = message.substring("NEW_CARD ".length()).split(" ");
+                        int hand = handOf(delta);
+                        delta = withoutHand(delta);
+                        addCardToPlayer(hand, delta[0]);
+                        setPlayerScore(hand, delta[1]);
+                    } else if (message.startsWith("HAND ")) {
+                        String[] cards = message.substring("HAND ".length()).split(" ");
+                        displayPlayerHand(handOf(cards), withoutHand(cards));
+                    } else if (message.startsWith("SNAPSHOT ")) {
+                        displayDealerSnapshot(message);
                     } else if (message.startsWith("DEALER_FIRST_CARD")) {
                         String cardStr = message.substring("DEALER_FIRST_CARD ".length());
                         dealerHasFirstCard = true;
@@ -223,14 +386,14 @@ public class Client extends JFrame {
                         dealerPanel.revalidate();
                         dealerPanel.repaint();
                         dealerCardLabel.setText("Dealer: ");
-                    } else if (message.startsWith("DEALER_HAND")) {
-                        showMessage(message);
-                        displayDealerHand(message);
-                    } else if (message.startsWith("DEALER_HIT")) {
+                    } else if (message.startsWith("DEALER_REVEAL") || message.startsWith("DEALER_HIT")) {
                         showMessage(message);
-                        addCardToDealer(message.substring("DEALER_HIT ".length()));
-                    } else if (message.equals("YOUR_TURN")) {
-                        showMessage("It's your turn!");
+                        String[] delta = message.substring(message.indexOf(' ') + 1).split(" ");
+                        addCardToDealer(delta[0]);
+                        dealerCardLabel.setText("Dealer Score: " + delta[1]);
+                    } else if (message.startsWith("YOUR_TURN")) {
+                        turnHand = indexedHands ? Integer.parseInt(message.substring("YOUR_TURN ".length())) : 0;
+                        showMessage(indexedHands ? "It's your turn (hand " + turnHand + ")!" : "It's your turn!");
                         isMyTurn = true;
                         updateControlButtons();
                     } else if (message.equals("CLEAR_HAND")) {
@@ -266,6 +429,9 @@ public class Client extends JFrame {
                 e.printStackTrace();
             }
         }
+        if (handoffTarget != null) {
+            moveTo(handoffTarget);
+        }
     }
 
     private void showMessage(String message) {
@@ -312,19 +478,52 @@ public class Client extends JFrame {
         });
     }
 
-    private void displayInitialCards(String[] cards) {
-        clearHands();
-        for (int i = 0; i < cards.length; i++) {
-            addCardToPlayer(cards[i]);
+    // Once hands are indexed, the first word of a hand message is the hand
+    private int handOf(String[] parts) {
+        return indexedHands ? Integer.parseInt(parts[0]) : 0;
+    }
+
+    private String[] withoutHand(String[] parts) {
+        return indexedHands ? Arrays.copyOfRange(parts, 1, parts.length) : parts;
+    }
+
+    // Panel for one of our hands, added next to the others the first time it is dealt
+    private JPanel handPanel(int hand) {
+        while (handPanels.size() <= hand) {
+            JPanel panel = new JPanel(new FlowLayout(FlowLayout.CENTER, cardSpacing, 10));
+            panel.setBorder(BorderFactory.createTitledBorder("Hand " + handPanels.size()));
+            handPanels.add(panel);
+            handsPanel.add(panel);
+            handsPanel.revalidate();
         }
+        return handPanels.get(hand);
     }
 
-    private void addCardToPlayer(String cardStr) {
+    private String handTitle(int hand) {
+        return indexedHands ? "Hand " + hand : "Your Hand";
+    }
+
+    // Cards followed by the hand's score
+    private void displayPlayerHand(int hand, String[] cardsAndScore) {
+        handPanel(hand).removeAll();
+        playerCards.clear();
+        for (int i = 0; i < cardsAndScore.length - 1; i++) {
+            addCardToPlayer(hand, cardsAndScore[i]);
+        }
+        setPlayerScore(hand, cardsAndScore[cardsAndScore.length - 1]);
+    }
+
+    private void setPlayerScore(int hand, String score) {
+        handPanel(hand).setBorder(BorderFactory.createTitledBorder(handTitle(hand) + " (Score: " + score + ")"));
+    }
+
+    private void addCardToPlayer(int hand, String cardStr) {
+        JPanel panel = handPanel(hand);
         JLabel cardLabel = getCardLabel(cardStr);
         playerCards.add(cardLabel);
-        playerPanel.add(cardLabel);
-        playerPanel.revalidate();
-        playerPanel.repaint();
+        panel.add(cardLabel);
+        panel.revalidate();
+        panel.repaint();
     }
 
     private void addCardToDealer(String cardStr) {
@@ -364,30 +563,19 @@ public class Client extends JFrame {
         cardImages.put("back", new ImageIcon(getClass().getResource("/images/back.png")));
     }
 
-    private void displayDealerHand(String message) {
-        String handInfo = message.substring("DEALER_HAND ".length());
-        String[] parts = handInfo.split("\\(");
-        String cardDetails = parts[0].trim();
-        String[] cards = cardDetails.split(" ");
-
+    // SNAPSHOT <seq> [<visible dealer cards...> <score>]
+    private void displayDealerSnapshot(String message) {
+        String[] parts = message.split(" ");
         clearDealerHand();
-
-        for (String cardStr : cards) {
-            if (!cardStr.isEmpty()) {
-                addCardToDealer(cardStr);
-            }
+        if (parts.length < 4) {
+            dealerCardLabel.setText("Dealer: ?");
+            return;
         }
-        if (parts.length > 1) {
-            String scoreText = parts[1];
-            if (scoreText.contains("Score:")) {
-                dealerCardLabel.setText("(Dealer " + scoreText);
-            } else {
-                dealerCardLabel.setText("(Dealer Score: " + scoreText);
-            }
-        } else {
-            dealerCardLabel.setText("Dealer: ");
+        for (int i = 2; i < parts.length - 1; i++) {
+            addCardToDealer(parts[i]);
         }
-
+        dealerHasFirstCard = true;
+        dealerCardLabel.setText("Dealer Score: " + parts[parts.length - 1]);
     }
 
     private void clearDealerHand() {
@@ -399,13 +587,17 @@ public class Client extends JFrame {
     }
 
     private void clearHands() {
-        playerPanel.removeAll();
+        for (int hand = 0; hand < handPanels.size(); hand++) {
+            JPanel panel = handPanels.get(hand);
+            panel.removeAll();
+            panel.setBorder(BorderFactory.createTitledBorder(handTitle(hand)));
+            panel.revalidate();
+            panel.repaint();
+        }
         playerCards.clear();
         dealerPanel.removeAll();
         dealerCards.clear();
         dealerPanel.add(dealerCardLabel);
-        playerPanel.revalidate();
-        playerPanel.repaint();
         dealerPanel.revalidate();
         dealerPanel.repaint();
     }
@@ -433,7 +625,8 @@ public class Client extends JFrame {
 
     public static void main(String[] args) {
         String serverAddress = (args.length == 0) ? "localhost" : args[0];
-        int port = 10000;
-        SwingUtilities.invokeLater(() -> new Client(serverAddress, port));
+        boolean spectating = args.length > 1 && args[1].equals("spectate");
+        int port = (args.length > 2) ? Integer.parseInt(args[2]) : Server.DEFAULT_PORT;
+        SwingUtilities.invokeLater(() -> new Client(serverAddress, port, spectating));
     }
 }
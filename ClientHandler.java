@@ -1,37 +1,57 @@
 import java.io.*;
-import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class ClientHandler extends Thread {
-    private Socket socket;
-    private BufferedReader input;
-    private PrintWriter output;
-    private List<Card> playerCards;
+    private Transport transport;
+    private static final int MAX_HANDS = Integer.getInteger("blackjack.maxHands", 4);
+
+    private List<Hand> hands = new ArrayList<>();
+    private int handsWanted = 1; // Hands dealt to this player from the next deal on
+    private boolean indexedHands; // Set once the client sends HANDS; its hand messages then carry an index
     private String playerName;
-    private Server server;
-    private int score;
+    private Table table;
     private int clientPort;
+    private int profileSlot = -1;
+    private TokenBucket chatLimit = new TokenBucket(5, 1.0);
 
-    public ClientHandler(Socket socket, Server server) {
-        this.socket = socket;
-        this.playerCards = new ArrayList<>();
-        this.server = server;
-        this.score = 0;
-        this.clientPort = socket.getLocalPort();
+    public ClientHandler(Transport transport, Table table) {
+        this.transport = transport;
+        this.table = table;
+        this.clientPort = transport.getLocalPort();
         try {
 
-            input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            output = new PrintWriter(socket.getOutputStream(), true);
-
-            this.playerName = input.readLine();
-            server.log("New player: " + playerName + " has joined on port " + clientPort);
-            server.broadcast(playerName + " JOINED");
+            String firstLine = transport.readLine();
+            if (firstLine != null && firstLine.startsWith("COMPRESS ")) {
+                negotiateCompression(firstLine.substring("COMPRESS ".length()));
+                firstLine = transport.readLine();
+            }
+            this.playerName = firstLine;
+            table.log("New player: " + playerName + " has joined on port " + clientPort);
+
+            ProfileStore profiles = table.getProfiles();
+            if (profiles != null && playerName != null) {
+                profileSlot = profiles.findOrCreate(playerName);
+                if (profileSlot >= 0) {
+                    sendMessage("PROFILE " + profiles.getHandsPlayed(profileSlot) + " " + profiles.getWins(profileSlot)
+                            + " " + profiles.getLosses(profileSlot) + " " + profiles.getPushes(profileSlot)
+                            + " " + profiles.getBankroll(profileSlot));
+                }
+            }
 
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    // COMPRESS <method> may come before the name. The answer goes out uncompressed and
+    // everything after COMPRESS_OK is deflated.
+    private void negotiateCompression(String method) throws IOException {
+        if (!method.equals("deflate") || !transport.startCompression(encode("COMPRESS_OK"))) {
+            transport.write(encode("COMPRESS_NO"));
+        }
+    }
+
     public int getClientPort() {
         return clientPort;
     }
@@ -39,88 +59,193 @@ public class ClientHandler extends Thread {
     @Override
     public void run() {
         try {
-            output.println("WAITING_FOR_PLAYERS");
             String clientInput;
-            while ((clientInput = input.readLine()) != null) {
-                server.log(playerName + " says: " + clientInput + " (on port " + clientPort + ")");
-                server.broadcast(playerName + " says: " + clientInput);
-                if (clientInput.equals("HIT") || clientInput.equals("STAND")) {
-                    server.handleClientAction(this, clientInput);
-                }
+            while ((clientInput = transport.readLine()) != null) {
+                String line = clientInput;
+                table.execute(() -> handleLine(line));
             }
+            table.log(playerName + " left from port " + clientPort);
+            table.execute(() -> table.removeClient(this));
         } catch (IOException e) {
-            server.log(playerName + " disconnected from port " + clientPort);
-            server.removeClient(this);
+            table.log(playerName + " disconnected from port " + clientPort);
+            table.execute(() -> table.removeClient(this));
         } finally {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            transport.close();
+        }
+    }
+
+    // Called by the table once the player has a seat
+    public void joined() {
+        sendMessage("WAITING_FOR_PLAYERS");
+        table.sendSnapshot(this);
+    }
+
+    // One line from the client. Connections pass it through Table.execute; the simulator calls it directly.
+    public void handleLine(String clientInput) {
+        // Game commands are matched against constants and passed on without building new strings.
+        // A bare HIT or STAND plays whichever of this player's hands has the turn.
+        if (clientInput.equals("HIT") || clientInput.equals("STAND")) {
+            table.handleClientAction(this, -1, clientInput);
+        } else if (clientInput.startsWith("HIT ")) {
+            handleIndexedAction("HIT", clientInput);
+        } else if (clientInput.startsWith("STAND ")) {
+            handleIndexedAction("STAND", clientInput);
+        } else if (clientInput.startsWith("HANDS ")) {
+            setHandsWanted(clientInput.substring("HANDS ".length()));
+        } else if (clientInput.startsWith("CHAT ")) {
+            if (chatLimit.tryAcquire()) {
+                table.getChat().post(playerName, clientInput.substring("CHAT ".length()));
+            } else {
+                sendMessage("CHAT_RATE_LIMITED");
             }
+        } else if (clientInput.equals("RESYNC")) {
+            table.sendSnapshot(this);
+        } else {
+            sendMessage("UNKNOWN_COMMAND");
+        }
+    }
+
+    // HIT <hand> or STAND <hand>
+    private void handleIndexedAction(String action, String clientInput) {
+        try {
+            table.handleClientAction(this, Integer.parseInt(clientInput.substring(action.length() + 1)), action);
+        } catch (NumberFormatException e) {
+            sendMessage("UNKNOWN_COMMAND");
+        }
+    }
+
+    // HANDS <n>: how many hands to play from the next deal, replied to with the number granted
+    private void setHandsWanted(String count) {
+        try {
+            // The reply carries what was granted, which may be fewer than asked when the table is crowded
+            handsWanted = table.grantHands(this, Math.min(Integer.parseInt(count), MAX_HANDS));
+        } catch (NumberFormatException e) {
+            sendMessage("UNKNOWN_COMMAND");
+            return;
         }
+        indexedHands = true;
+        sendMessage("HANDS " + handsWanted);
+    }
+
+    // Slot in the table's ProfileStore, or -1 if this player has no profile
+    public int getProfileSlot() {
+        return profileSlot;
     }
 
     public String getPlayerName() {
         return playerName;
     }
 
-    public void sendInitialCards(Card card1, Card card2) {
-        playerCards.add(card1);
-        playerCards.add(card2);
-        score = calculateScore();
-        sendMessage("INITIAL_CARDS " + card1.toString() + " " + card2.toString());
-        sendHand();
+    // Empties the player's hands and sets how many the coming deal fills
+    public void resetHands() {
+        while (hands.size() < handsWanted) {
+            hands.add(new Hand());
+        }
+        while (hands.size() > handsWanted) {
+            hands.remove(hands.size() - 1);
+        }
+        for (Hand hand : hands) {
+            hand.clear();
+        }
+    }
+
+    // Puts back the hands this player held when their table was snapshotted
+    public void restoreSeat(TableSnapshot.Seat seat) {
+        handsWanted = Math.max(1, Math.min(seat.handsWanted(), MAX_HANDS));
+        // The rejoining client numbers its hands from its old table on, before its HANDS line arrives here
+        indexedHands = seat.indexedHands();
+        hands.clear();
+        for (List<Card> cards : seat.hands()) {
+            Hand hand = new Hand();
+            for (Card card : cards) {
+                hand.addCard(card);
+            }
+            hands.add(hand);
+        }
     }
 
-    public void addCard(Card card) {
-        playerCards.add(card);
-        score = calculateScore();
-        sendMessage("NEW_CARD " + card.toString()); 
-        sendHand(); 
+    public int getHandsWanted() {
+        return handsWanted;
     }
 
-    public int getScore() {
-        return score;
+    public List<Hand> getHands() {
+        return hands;
     }
 
-    private int calculateScore() {
-        int total = 0;
-        int aceCount = 0;
+    public Hand getHand(int hand) {
+        return hands.get(hand);
+    }
 
-        for (Card c : playerCards) {
-            int val = c.getValue();
-            if (c.getRank().equals("A")) aceCount++;
-            total += val;
-        }
+    // Name used in public messages: the player's name, plus #<hand> when they hold several hands
+    public String getHandLabel(int hand) {
+        return (hands.size() > 1) ? playerName + "#" + hand : playerName;
+    }
 
-        while (aceCount > 0 && total > 21) {
-            total -= 10;
-            aceCount--;
-        }
+    public void sendInitialCards(int hand, Card card1, Card card2) {
+        Hand h = hands.get(hand);
+        h.addCard(card1);
+        h.addCard(card2);
+        sendMessage(handMessage("INITIAL_CARDS", hand) + " " + card1.toString() + " " + card2.toString() + " "
+                + h.getScore());
+    }
+
+    public void addCard(int hand, Card card) {
+        Hand h = hands.get(hand);
+        h.addCard(card);
+        sendMessage(handMessage("NEW_CARD", hand) + " " + card.toString() + " " + h.getScore());
+    }
 
-        return total;
+    public void sendTurn(int hand) {
+        sendMessage(handMessage("YOUR_TURN", hand));
     }
 
-    public List<Card> getCards() {
-        return playerCards;
+    // Full hands, only sent as part of a snapshot. Normal play sends NEW_CARD deltas.
+    // A client that hasn't asked for several hands only understands the first.
+    public boolean isIndexedHands() {
+        return indexedHands;
     }
 
-    public void sendHand() {
-        StringBuilder sb = new StringBuilder("Your card: ");
-        for (Card c : playerCards) {
-            sb.append(c.toString()).append(" ");
+    public void sendHands() {
+        for (int i = 0; i < (indexedHands ? hands.size() : Math.min(hands.size(), 1)); i++) {
+            Hand hand = hands.get(i);
+            if (hand.isEmpty()) {
+                continue;
+            }
+            StringBuilder sb = new StringBuilder(handMessage("HAND", i));
+            for (Card c : hand.getCards()) {
+                sb.append(" ").append(c.toString());
+            }
+            sb.append(" ").append(hand.getScore());
+            sendMessage(sb.toString());
         }
-        sb.append("(Score: ").append(score).append(")");
-        sendMessage(sb.toString());
+    }
+
+    // Clients that never asked for several hands keep the unindexed messages
+    private String handMessage(String type, int hand) {
+        return indexedHands ? type + " " + hand : type;
     }
 
     public void sendMessage(String msg) {
-        output.println(msg);
+        sendFrame(encode(msg));
+    }
+
+    // Frames are written as-is, so one encoded broadcast can be shared by every recipient
+    public synchronized void sendFrame(byte[] frame) {
+        try {
+            transport.write(frame);
+        } catch (IOException e) {
+            table.log("Error sending to " + playerName + ": " + e.getMessage());
+        }
+    }
+
+    public static byte[] encode(String msg) {
+        return (msg + "\n").getBytes(StandardCharsets.UTF_8);
     }
 
     public void clearCards() {
-        playerCards.clear();
-        score = 0;
+        for (Hand hand : hands) {
+            hand.clear();
+        }
         sendMessage("CLEAR_HAND");
     }
 }
\ No newline at end of file
@@ -1,20 +1,28 @@
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 public class Deck {
 
+    // Suit and rank order of a fresh deck; TableSnapshot stores cards as indexes into these
+    public static final String[] SUITS = {"-Spade", "-Heart", "-Diamond", "-Club"};
+    public static final String[] RANKS = {"2", "3", "4", "5", "6", "7", "8", "9", "10", "J", "Q", "K", "A"};
+
     private List<Card> cards;
     private int currentIndex;
+    private RandomGenerator rng;
 
     public Deck() {
+        this(new SplittableRandom());
+    }
+
+    // Each table passes its own generator, so shuffles don't share state across threads
+    // and a deck's order can be replayed from the generator's seed
+    public Deck(RandomGenerator rng) {
+        this.rng = rng;
         cards = new ArrayList<>();
-        String[] suits = {"-Spade", "-Heart", "-Diamond", "-Club"};
-        String[] ranks = {
-            "2", "3", "4", "5", "6", "7", "8", "9", "10",
-            "J", "Q", "K", "A"
-        };
-
-        for (String suit : suits) {
-            for (String rank : ranks) {
+
+        for (String suit : SUITS) {
+            for (String rank : RANKS) {
                 cards.add(new Card(suit, rank));
             }
         }
@@ -23,8 +31,17 @@ public class Deck {
         currentIndex = 0;
     }
 
+    // A deck already in play, restored in the given order with the given number of cards drawn
+    public Deck(List<Card> order, int currentIndex) {
+        this.rng = new SplittableRandom();
+        this.cards = new ArrayList<>(order);
+        this.currentIndex = currentIndex;
+    }
+
     public void shuffle() {
-        Collections.shuffle(cards);
+        for (int i = cards.size() - 1; i > 0; i--) {
+            Collections.swap(cards, i, rng.nextInt(i + 1));
+        }
         currentIndex = 0;
     }
 
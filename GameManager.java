@@ -1,145 +1,263 @@
+import java.util.ArrayList;
 import java.util.List;
 
 public class GameManager {
-    private Server server;
-    private int currentPlayerIndex = 0;
+    // One hand to be played; a player holding several hands gets one turn per hand
+    private record Turn(ClientHandler player, int hand) {
+    }
+
+    // Most hands a table deals at once: 34 of the 52 cards up front, leaving the rest to hit from
+    public static final int MAX_TABLE_HANDS = 16;
+
+    private Table table;
+    private List<Turn> turns = new ArrayList<>();
+    private int currentTurn = 0;
     private boolean roundOver = false;
+    private boolean dealerRevealed = false;
+    private long roundStartMillis;
 
-    public GameManager(Server server) {
-        this.server = server;
+    public GameManager(Table table) {
+        this.table = table;
     }
 
     public void startGame(List<ClientHandler> clients, Deck deck, DealerAI dealer) {
-        currentPlayerIndex = 0;
+        currentTurn = 0;
         roundOver = false;
+        dealerRevealed = false;
+        roundStartMillis = System.currentTimeMillis();
 
-        for (ClientHandler player : clients) {
-            Card card1 = deck.drawCard();
-            Card card2 = deck.drawCard();
-            player.sendInitialCards(card1, card2);
+        if (!deal(clients, deck, dealer, false)) {
+            return;
+        }
+        if (!turns.isEmpty()) {
+            sendTurn(turns.get(0));
         }
+    }
 
-        dealer.getCards().clear();
+    public void startNewRound(List<ClientHandler> clients, Deck deck, DealerAI dealer) {
+        currentTurn = 0;
+        roundOver = false;
+        dealerRevealed = false;
+        roundStartMillis = System.currentTimeMillis();
+
+        if (deck.getRemainingCards().size() <= initialCardsNeeded(clients)) {
+            // Even a fresh deck is too small for the hands at the table
+            dealFailed("Not enough cards to deal " + (initialCardsNeeded(clients) - 2) / 2 + " hands");
+            return;
+        }
+        if (deal(clients, deck, dealer, true)) {
+            currentTurn--;
+            moveToNextPlayer();
+        }
+    }
+
+    // Deals every hand and the dealer's two cards. Returns false if the deck ran out,
+    // in which case the round is over and the table can start a new one.
+    private boolean deal(List<ClientHandler> clients, Deck deck, DealerAI dealer, boolean clearFirst) {
         try {
+            dealPlayers(clients, deck, clearFirst);
+            dealer.getCards().clear();
             dealer.drawCard();
             dealer.drawCard();
-            server.broadcastDealerFirstCard(dealer.getCards().get(0));
         } catch (IllegalStateException e) {
-            server.log("Error drawing dealer's initial cards: " + e.getMessage());
-            server.broadcast("GAME_OVER: " + e.getMessage());
-            return;
+            dealFailed("Error dealing initial cards: " + e.getMessage());
+            return false;
         }
+        table.broadcastDealerFirstCard(dealer.getCards().get(0));
+        return true;
     }
 
-    public void startNewRound(List<ClientHandler> clients, Deck deck, DealerAI dealer) {
-        currentPlayerIndex = 0;
-        roundOver = false;
+    private void dealFailed(String reason) {
+        table.log(reason);
+        table.broadcastFromGameManager("GAME_OVER: " + reason);
+        turns.clear();
+        roundOver = true;
+        table.enableNewRoundButton();
+    }
 
-        if (deck.getRemainingCards().size() > ((clients.size() * 2) + 2)) {
-            for (ClientHandler player : clients) {
+    // Two cards for every hand and the dealer
+    public static int initialCardsNeeded(List<ClientHandler> clients) {
+        int hands = 0;
+        for (ClientHandler player : clients) {
+            hands += player.getHandsWanted();
+        }
+        return (hands * 2) + 2;
+    }
+
+    // Deals each player's hands in seat order, which is also the turn order
+    private void dealPlayers(List<ClientHandler> clients, Deck deck, boolean clearFirst) {
+        turns.clear();
+        for (ClientHandler player : clients) {
+            if (clearFirst) {
                 player.clearCards();
+            }
+            player.resetHands();
+            for (int hand = 0; hand < player.getHands().size(); hand++) {
                 Card card1 = deck.drawCard();
                 Card card2 = deck.drawCard();
-                player.sendInitialCards(card1, card2);
+                player.sendInitialCards(hand, card1, card2);
+                turns.add(new Turn(player, hand));
             }
-
-            dealer.getCards().clear();
-            dealer.drawCard();
-            dealer.drawCard();
-            server.broadcastDealerFirstCard(dealer.getCards().get(0));
-            currentPlayerIndex--;
-            moveToNextPlayer();
         }
     }
 
-    public int getCurrentPlayerIndex() {
-        return currentPlayerIndex;
+    // For a table restored from a snapshot, which is always taken between rounds
+    public void restoreRoundOver() {
+        turns.clear();
+        roundOver = true;
+        dealerRevealed = true;
+    }
+
+    public boolean isRoundOver() {
+        return roundOver;
     }
 
-    public void handlePlayerAction(ClientHandler player, String action) {
+    public boolean isDealerRevealed() {
+        return dealerRevealed;
+    }
+
+    // hand is -1 to play whichever of the player's hands has the turn
+    public void handlePlayerAction(ClientHandler player, int hand, String action) {
         if (roundOver)
             return;
 
+        Turn turn = (currentTurn >= 0 && currentTurn < turns.size()) ? turns.get(currentTurn) : null;
+        if (turn == null || turn.player() != player || (hand >= 0 && hand != turn.hand())) {
+            table.sendMessageToClient(player, "NOT_YOUR_TURN");
+            return;
+        }
+
         if (action.equals("HIT")) {
             try {
-                Card newCard = server.getDeck().drawCard();
-                player.addCard(newCard);
+                Card newCard = table.getDeck().drawCard();
+                player.addCard(turn.hand(), newCard);
 
-                if (player.getScore() > 21) {
-                    server.broadcastFromGameManager(player.getPlayerName() + " BUSTED!");
+                if (player.getHand(turn.hand()).getScore() > 21) {
+                    table.broadcastFromGameManager(player.getHandLabel(turn.hand()) + " BUSTED!");
                     moveToNextPlayer();
                 } else {
-                    server.sendMessageToClient(player, "YOUR_TURN");
+                    sendTurn(turn);
                 }
             } catch (IllegalStateException e) {
-                server.log("Error drawing card for " + player.getPlayerName() + ": " + e.getMessage());
-                server.broadcastFromGameManager("GAME_OVER: " + e.getMessage());
+                table.log("Error drawing card for " + player.getPlayerName() + ": " + e.getMessage());
+                table.broadcastFromGameManager("GAME_OVER: " + e.getMessage());
                 roundOver = true;
-                server.enableNewRoundButton();
+                table.enableNewRoundButton();
             }
         } else if (action.equals("STAND")) {
-            server.broadcastFromGameManager(player.getPlayerName() + " STANDS");
+            table.broadcastFromGameManager(player.getHandLabel(turn.hand()) + " STANDS");
+            moveToNextPlayer();
+        }
+    }
+
+    // A player who leaves mid-round forfeits the rest of their turns
+    public void playerLeft(ClientHandler player) {
+        if (roundOver || turns.isEmpty()) {
+            return;
+        }
+        boolean hadTurn = currentTurn >= 0 && currentTurn < turns.size() && turns.get(currentTurn).player() == player;
+        for (int i = turns.size() - 1; i > currentTurn; i--) {
+            if (turns.get(i).player() == player) {
+                turns.remove(i);
+            }
+        }
+        if (hadTurn) {
             moveToNextPlayer();
         }
     }
 
     private void moveToNextPlayer() {
-        List<ClientHandler> clients = server.getClients();
-        currentPlayerIndex++;
-        if (currentPlayerIndex < clients.size()) {
-            server.sendMessageToClient(clients.get(currentPlayerIndex), "YOUR_TURN");
+        currentTurn++;
+        if (currentTurn < turns.size()) {
+            sendTurn(turns.get(currentTurn));
         } else {
             dealerPlay();
         }
     }
 
+    private void sendTurn(Turn turn) {
+        turn.player().sendTurn(turn.hand());
+    }
+
     private void dealerPlay() {
+        TableEvents.DealerPlay event = new TableEvents.DealerPlay();
+        event.begin();
         roundOver = true;
-        server.broadcastFromGameManager("DEALER_TURN");
-        server.broadcastFromGameManager("DEALER_HAND " + getDealerHandString() + " (Score: " + getDealerScore() + ")");
+        dealerRevealed = true;
+        table.broadcastFromGameManager("DEALER_TURN");
+        table.broadcastFromGameManager("DEALER_REVEAL " + getDealer().getCards().get(1) + " " + getDealerScore());
 
         while (getDealerScore() < 17) {
             try {
-                Card newCard = server.getDeck().drawCard();
+                Card newCard = table.getDeck().drawCard();
                 getDealer().addCard(newCard);
-                server.broadcastFromGameManager("DEALER_HIT " + newCard.toString());
-                server.broadcastFromGameManager(
-                        "DEALER_HAND " + getDealerHandString() + " (Score: " + getDealerScore() + ")");
+                table.broadcastFromGameManager("DEALER_HIT " + newCard.toString() + " " + getDealerScore());
             } catch (IllegalStateException e) {
-                server.log("Error drawing card for dealer: " + e.getMessage());
-                server.broadcastFromGameManager("GAME_OVER: " + e.getMessage());
+                table.log("Error drawing card for dealer: " + e.getMessage());
+                table.broadcastFromGameManager("GAME_OVER: " + e.getMessage());
                 break;
             }
         }
 
         if (getDealerScore() > 21) {
-            server.broadcastFromGameManager("DEALER BUSTED!");
+            table.broadcastFromGameManager("DEALER BUSTED!");
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.tableId = table.getTableId();
+            event.dealerScore = getDealerScore();
+            event.commit();
         }
 
         determineWinners();
-        server.enableNewRoundButton();
+        table.enableNewRoundButton();
     }
 
     private void determineWinners() {
+        TableEvents.DetermineWinners event = new TableEvents.DetermineWinners();
+        event.begin();
         int dealerScore = getDealerScore();
-        for (ClientHandler player : server.getClients()) {
-            int playerScore = player.getScore();
+        HandHistory history = table.getHistory();
+        int roundId = history.recordRound(getDealer().getCards().get(0).getValue(), dealerScore,
+                System.currentTimeMillis() - roundStartMillis);
+        for (Turn turn : turns) {
+            ClientHandler player = turn.player();
+            if (!table.getClients().contains(player)) {
+                continue; // Left during the round
+            }
+            int playerScore = player.getHand(turn.hand()).getScore();
+            String label = player.getHandLabel(turn.hand());
+            byte outcome;
             if (playerScore > 21) {
-                server.broadcastFromGameManager(player.getPlayerName() + " LOSES (Bust)");
+                table.broadcastFromGameManager(label + " LOSES (Bust)");
+                outcome = HandHistory.LOSS;
             } else if (dealerScore > 21) {
-                server.broadcastFromGameManager(player.getPlayerName() + " WINS (Dealer Bust)");
+                table.broadcastFromGameManager(label + " WINS (Dealer Bust)");
+                outcome = HandHistory.WIN;
             } else if (playerScore > dealerScore) {
-                server.broadcastFromGameManager(player.getPlayerName() + " WINS");
+                table.broadcastFromGameManager(label + " WINS");
+                outcome = HandHistory.WIN;
             } else if (playerScore < dealerScore) {
-                server.broadcastFromGameManager(player.getPlayerName() + " LOSES");
+                table.broadcastFromGameManager(label + " LOSES");
+                outcome = HandHistory.LOSS;
             } else {
-                server.broadcastFromGameManager(player.getPlayerName() + " PUSH (Tie)");
+                table.broadcastFromGameManager(label + " PUSH (Tie)");
+                outcome = HandHistory.PUSH;
+            }
+            history.recordResult(roundId, player.getPlayerName(), playerScore, outcome);
+            if (player.getProfileSlot() >= 0) {
+                table.getProfiles().recordOutcome(player.getProfileSlot(), outcome);
+            }
+            if (table.getTournament() != null) {
+                table.getTournament().record(player.getPlayerName(), outcome);
             }
         }
-    }
-
-    private String getDealerHandString() {
-        return getDealer().getCardsAsString();
+        table.sendStandings();
+        if (event.shouldCommit()) {
+            event.tableId = table.getTableId();
+            event.players = table.getClients().size();
+            event.commit();
+        }
     }
 
     private int getDealerScore() {
@@ -147,6 +265,6 @@ public class GameManager {
     }
 
     private DealerAI getDealer() {
-        return server.getDealer();
+        return table.getDealer();
     }
 }
\ No newline at end of file
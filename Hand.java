@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// One hand of cards. A player can hold several at once, each played on its own turn.
+public class Hand {
+    private List<Card> cards = new ArrayList<>();
+    private int score;
+
+    public void addCard(Card card) {
+        cards.add(card);
+        score = calculateScore();
+    }
+
+    public void clear() {
+        cards.clear();
+        score = 0;
+    }
+
+    public List<Card> getCards() {
+        return cards;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public boolean isEmpty() {
+        return cards.isEmpty();
+    }
+
+    private int calculateScore() {
+        int total = 0;
+        int aceCount = 0;
+
+        for (Card c : cards) {
+            int val = c.getValue();
+            if (c.getRank().equals("A")) aceCount++;
+            total += val;
+        }
+
+        while (aceCount > 0 && total > 21) {
+            total -= 10;
+            aceCount--;
+        }
+
+        return total;
+    }
+}
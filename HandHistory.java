@@ -0,0 +1,168 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Completed rounds kept in memory as columns of primitive arrays. Rows are appended
+// into fixed size chunks; once maxChunks is reached the oldest chunk is dropped.
+// Queries copy the chunk list under the lock and then scan the arrays in parallel.
+public class HandHistory {
+
+    public static final byte WIN = 0;
+    public static final byte LOSS = 1;
+    public static final byte PUSH = 2;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final int maxChunks;
+    private final ArrayDeque<RoundChunk> roundChunks = new ArrayDeque<>();
+    private final ArrayDeque<ResultChunk> resultChunks = new ArrayDeque<>();
+    private final Map<String, Integer> playerIds = new HashMap<>();
+    private final List<String> playerNames = new ArrayList<>();
+    private int nextRoundId = 0;
+
+    // One row per round
+    private static class RoundChunk {
+        final byte[] upCard = new byte[CHUNK_SIZE];
+        final byte[] dealerScore = new byte[CHUNK_SIZE];
+        final int[] durationMillis = new int[CHUNK_SIZE];
+        int size;
+    }
+
+    // One row per player per round
+    private static class ResultChunk {
+        final int[] roundId = new int[CHUNK_SIZE];
+        final int[] playerId = new int[CHUNK_SIZE];
+        final byte[] playerScore = new byte[CHUNK_SIZE];
+        final byte[] outcome = new byte[CHUNK_SIZE];
+        int size;
+    }
+
+    public HandHistory(int maxChunks) {
+        this.maxChunks = maxChunks;
+    }
+
+    // Returns the round id to pass to recordResult
+    public synchronized int recordRound(int upCardValue, int dealerScore, long durationMillis) {
+        RoundChunk chunk = roundChunks.peekLast();
+        if (chunk == null || chunk.size == CHUNK_SIZE) {
+            chunk = new RoundChunk();
+            roundChunks.addLast(chunk);
+            if (roundChunks.size() > maxChunks) {
+                roundChunks.removeFirst();
+            }
+        }
+        int row = chunk.size;
+        chunk.upCard[row] = (byte) upCardValue;
+        chunk.dealerScore[row] = (byte) dealerScore;
+        chunk.durationMillis[row] = (int) Math.min(durationMillis, Integer.MAX_VALUE);
+        chunk.size = row + 1;
+        return nextRoundId++;
+    }
+
+    public synchronized void recordResult(int roundId, String playerName, int playerScore, byte outcome) {
+        ResultChunk chunk = resultChunks.peekLast();
+        if (chunk == null || chunk.size == CHUNK_SIZE) {
+            chunk = new ResultChunk();
+            resultChunks.addLast(chunk);
+            if (resultChunks.size() > maxChunks) {
+                resultChunks.removeFirst();
+            }
+        }
+        Integer playerId = playerIds.get(playerName);
+        if (playerId == null) {
+            playerId = playerNames.size();
+            playerIds.put(playerName, playerId);
+            playerNames.add(playerName);
+        }
+        int row = chunk.size;
+        chunk.roundId[row] = roundId;
+        chunk.playerId[row] = playerId;
+        chunk.playerScore[row] = (byte) playerScore;
+        chunk.outcome[row] = outcome;
+        chunk.size = row + 1;
+    }
+
+    public synchronized int getRoundCount() {
+        int total = 0;
+        for (RoundChunk chunk : roundChunks) {
+            total += chunk.size;
+        }
+        return total;
+    }
+
+    // Wins divided by hands played, for every player seen
+    public Map<String, Double> winRateByPlayer() {
+        List<ResultChunk> chunks;
+        int[] sizes;
+        List<String> names;
+        synchronized (this) {
+            chunks = new ArrayList<>(resultChunks);
+            sizes = chunks.stream().mapToInt(c -> c.size).toArray();
+            names = new ArrayList<>(playerNames);
+        }
+        int players = names.size();
+        long[] totals = IntStream.range(0, chunks.size()).parallel().mapToObj(i -> {
+            ResultChunk chunk = chunks.get(i);
+            long[] counts = new long[players * 2]; // [wins, hands] per player
+            for (int row = 0; row < sizes[i]; row++) {
+                int id = chunk.playerId[row];
+                counts[id * 2] += (chunk.outcome[row] == WIN) ? 1 : 0;
+                counts[id * 2 + 1]++;
+            }
+            return counts;
+        }).reduce(new long[players * 2], HandHistory::sum);
+
+        Map<String, Double> rates = new TreeMap<>();
+        for (int id = 0; id < players; id++) {
+            if (totals[id * 2 + 1] > 0) {
+                rates.put(names.get(id), (double) totals[id * 2] / totals[id * 2 + 1]);
+            }
+        }
+        return rates;
+    }
+
+    // Indexed by the dealer's up card value (2-11, ace is 11); NaN where no rounds were seen
+    public double[] dealerBustRateByUpCard() {
+        List<RoundChunk> chunks;
+        int[] sizes;
+        synchronized (this) {
+            chunks = new ArrayList<>(roundChunks);
+            sizes = chunks.stream().mapToInt(c -> c.size).toArray();
+        }
+        long[] totals = IntStream.range(0, chunks.size()).parallel().mapToObj(i -> {
+            RoundChunk chunk = chunks.get(i);
+            long[] counts = new long[24]; // [busts, rounds] per up card value
+            for (int row = 0; row < sizes[i]; row++) {
+                int upCard = chunk.upCard[row];
+                counts[upCard * 2] += (chunk.dealerScore[row] > 21) ? 1 : 0;
+                counts[upCard * 2 + 1]++;
+            }
+            return counts;
+        }).reduce(new long[24], HandHistory::sum);
+
+        double[] rates = new double[12];
+        for (int upCard = 0; upCard < rates.length; upCard++) {
+            rates[upCard] = (totals[upCard * 2 + 1] > 0) ? (double) totals[upCard * 2] / totals[upCard * 2 + 1] : Double.NaN;
+        }
+        return rates;
+    }
+
+    public double averageRoundMillis() {
+        List<RoundChunk> chunks;
+        int[] sizes;
+        synchronized (this) {
+            chunks = new ArrayList<>(roundChunks);
+            sizes = chunks.stream().mapToInt(c -> c.size).toArray();
+        }
+        return IntStream.range(0, chunks.size()).parallel()
+                .flatMap(i -> Arrays.stream(chunks.get(i).durationMillis, 0, sizes[i]))
+                .average().orElse(0);
+    }
+
+    private static long[] sum(long[] a, long[] b) {
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i] + b[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tournament standings that many tables update at once without a global lock.
+// A concurrent skip list keeps players ordered for top-N. A histogram of scores, kept
+// as a Fenwick tree of atomic counters, answers "my rank" in O(log n) by counting the
+// players above, with no walk of the list. Each player's update is serialized by the
+// score map, so the two stay in step.
+public class Leaderboard {
+
+    private static final int MAX_SCORE = 4095; // Higher scores share the top histogram bucket
+
+    private record Entry(int score, String player) implements Comparable<Entry> {
+        @Override
+        public int compareTo(Entry other) {
+            int byScore = Integer.compare(other.score, score);
+            return (byScore != 0) ? byScore : player.compareTo(other.player);
+        }
+    }
+
+    private final int topSize;
+    private final Map<String, Integer> scores = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>();
+    private final AtomicIntegerArray histogram = new AtomicIntegerArray(MAX_SCORE + 2);
+    private final AtomicLong topVersion = new AtomicLong();
+
+    public Leaderboard(int topSize) {
+        this.topSize = topSize;
+    }
+
+    // Adds points to a player's score and returns the new score
+    public int addPoints(String player, int points) {
+        int score = scores.compute(player, (name, old) -> {
+            int updated = (old == null) ? points : old + points;
+            if (old != null) {
+                ranking.remove(new Entry(old, name));
+                count(old, -1);
+            }
+            ranking.add(new Entry(updated, name));
+            count(updated, 1);
+            return updated;
+        });
+        if (reachesTop(score)) {
+            topVersion.incrementAndGet();
+        }
+        return score;
+    }
+
+    // 1 for the leader; players with equal scores share a rank
+    public int getRank(String player) {
+        Integer score = scores.get(player);
+        if (score == null) {
+            return 0;
+        }
+        return countUpTo(MAX_SCORE) - countUpTo(bucket(score)) + 1;
+    }
+
+    public int getScore(String player) {
+        return scores.getOrDefault(player, 0);
+    }
+
+    public int getPlayerCount() {
+        return scores.size();
+    }
+
+    // "name:score" for the leading players, best first
+    public List<String> getTop(int n) {
+        List<String> top = new ArrayList<>(n);
+        for (Entry entry : ranking) {
+            if (top.size() == n) {
+                break;
+            }
+            top.add(entry.player() + ":" + entry.score());
+        }
+        return top;
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    // Changes whenever an update may have changed the top of the board
+    public long getTopVersion() {
+        return topVersion.get();
+    }
+
+    private boolean reachesTop(int score) {
+        int seen = 0;
+        for (Entry entry : ranking) {
+            if (++seen == topSize || entry.score() <= score) {
+                return entry.score() <= score;
+            }
+        }
+        return true;
+    }
+
+    private void count(int score, int delta) {
+        for (int i = bucket(score) + 1; i < histogram.length(); i += i & -i) {
+            histogram.addAndGet(i, delta);
+        }
+    }
+
+    // Players with a score of at most the given one
+    private int countUpTo(int score) {
+        int players = 0;
+        for (int i = score + 1; i > 0; i -= i & -i) {
+            players += histogram.get(i);
+        }
+        return players;
+    }
+
+    private static int bucket(int score) {
+        return Math.max(0, Math.min(score, MAX_SCORE));
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// In-memory transport. pair() returns two connected ends: lines written to one end
+// are queued for the other. pollLine lets a single thread drive both ends without
+// blocking, which keeps simulated games deterministic.
+public class LoopbackTransport implements Transport {
+    private static final String EOF = new String("EOF"); // Compared by identity
+
+    private final BlockingQueue<String> inbound = new LinkedBlockingQueue<>();
+    private LoopbackTransport peer;
+    private volatile boolean closed;
+
+    private LoopbackTransport() {
+    }
+
+    public static LoopbackTransport[] pair() {
+        LoopbackTransport a = new LoopbackTransport();
+        LoopbackTransport b = new LoopbackTransport();
+        a.peer = b;
+        b.peer = a;
+        return new LoopbackTransport[] { a, b };
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        try {
+            String line = inbound.take();
+            if (line == EOF) {
+                inbound.add(EOF);
+                return null;
+            }
+            return line;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+    }
+
+    // Next queued line, or null if there is none right now (or the peer closed)
+    public String pollLine() {
+        String line = inbound.poll();
+        if (line == EOF) {
+            inbound.add(EOF);
+            return null;
+        }
+        return line;
+    }
+
+    // Sends a line as if it were a frame from this end
+    public void writeLine(String line) throws IOException {
+        write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        if (closed || peer.closed) {
+            throw new IOException("Loopback closed");
+        }
+        String text = new String(frame, StandardCharsets.UTF_8);
+        int start = 0;
+        int end;
+        while ((end = text.indexOf('\n', start)) >= 0) {
+            peer.inbound.add(text.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    @Override
+    public int getLocalPort() {
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            inbound.add(EOF);
+            peer.inbound.add(EOF);
+        }
+    }
+}
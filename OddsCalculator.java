@@ -0,0 +1,138 @@
+import java.util.*;
+
+// Exact odds for the cards still unseen in the shoe. A shoe is packed into a long
+// holding a 6-bit count per rank (ace, 2-9, ten-valued), and dealer results are
+// memoized per (shoe, dealer hand) in a bounded LRU cache, so repeated queries within
+// the same shoe mostly hit the cache.
+public class OddsCalculator {
+
+    // Indexes into the array returned by dealerOutcomes
+    public static final int UNDER_17 = 0; // Shoe ran out before the dealer reached 17
+    public static final int BUST = 6;     // 1..5 are final totals 17..21
+
+    private static final int RANKS = 10;
+    private static final int BITS = 6;
+    private static final long MASK = (1L << BITS) - 1;
+
+    private record State(long shoe, int dealerHand) {
+    }
+
+    private final Map<State, double[]> cache;
+
+    public OddsCalculator(int maxEntries) {
+        cache = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<State, double[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static long shoeKey(Collection<Card> cards) {
+        long shoe = 0;
+        for (Card c : cards) {
+            shoe += 1L << (rankIndex(c) * BITS);
+        }
+        return shoe;
+    }
+
+    // Probability of each final dealer result given the up card, with the hole card and
+    // every hit drawn from the shoe
+    public double[] dealerOutcomes(long shoe, Card upCard) {
+        int rank = rankIndex(upCard);
+        return dealer(shoe, hand(rank + 1, rank == 0));
+    }
+
+    // Chance that one more card takes the hand over 21
+    public double bustOnHit(long shoe, List<Card> hand) {
+        int hardTotal = 0;
+        boolean hasAce = false;
+        for (Card c : hand) {
+            int rank = rankIndex(c);
+            hardTotal += rank + 1;
+            hasAce |= rank == 0;
+        }
+        if (hasAce && hardTotal + 10 <= 21) {
+            return 0; // A soft hand can always count its ace as 1
+        }
+        int total = 0;
+        int busting = 0;
+        for (int rank = 0; rank < RANKS; rank++) {
+            int count = count(shoe, rank);
+            total += count;
+            if (hardTotal + rank + 1 > 21) {
+                busting += count;
+            }
+        }
+        return (total == 0) ? 0 : (double) busting / total;
+    }
+
+    private double[] dealer(long shoe, int hand) {
+        State state = new State(shoe, hand);
+        synchronized (cache) {
+            double[] cached = cache.get(state);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        double[] outcomes = new double[7];
+        int score = score(hand);
+        if (score >= 17) {
+            outcomes[score > 21 ? BUST : score - 16] = 1;
+        } else {
+            int total = 0;
+            for (int rank = 0; rank < RANKS; rank++) {
+                total += count(shoe, rank);
+            }
+            if (total == 0) {
+                outcomes[UNDER_17] = 1;
+            }
+            for (int rank = 0; rank < RANKS && total > 0; rank++) {
+                int count = count(shoe, rank);
+                if (count == 0) {
+                    continue;
+                }
+                double p = (double) count / total;
+                int next = hand(hardTotal(hand) + rank + 1, hasAce(hand) || rank == 0);
+                double[] sub = dealer(shoe - (1L << (rank * BITS)), next);
+                for (int i = 0; i < outcomes.length; i++) {
+                    outcomes[i] += p * sub[i];
+                }
+            }
+        }
+
+        synchronized (cache) {
+            cache.put(state, outcomes);
+        }
+        return outcomes;
+    }
+
+    // Dealer hand packed as hard total (aces counted as 1) plus a has-ace bit
+    private static int hand(int hardTotal, boolean hasAce) {
+        return (hardTotal << 1) | (hasAce ? 1 : 0);
+    }
+
+    private static int hardTotal(int hand) {
+        return hand >> 1;
+    }
+
+    private static boolean hasAce(int hand) {
+        return (hand & 1) != 0;
+    }
+
+    // Same rule as DealerAI: one ace counts 11 when that doesn't bust
+    private static int score(int hand) {
+        int hardTotal = hardTotal(hand);
+        return (hasAce(hand) && hardTotal + 10 <= 21) ? hardTotal + 10 : hardTotal;
+    }
+
+    private static int count(long shoe, int rank) {
+        return (int) ((shoe >>> (rank * BITS)) & MASK);
+    }
+
+    // 0 is the ace, 1-8 are 2-9, 9 is any ten-valued card
+    private static int rankIndex(Card c) {
+        return c.getRank().equals("A") ? 0 : c.getValue() - 1;
+    }
+}
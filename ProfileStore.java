@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+
+// Player profiles in a memory-mapped file. The file is a header followed by fixed
+// size slots forming an open-addressing hash table keyed by player name, so opening
+// the store maps the file without reading it and a lookup only touches the probed slots.
+// Several servers on one host may share the file: new profiles are added under a lock on the
+// header, and the profile count lives only in the file.
+public class ProfileStore {
+
+    private static final int MAGIC = 0x424A5046; // "BJPF"
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 128;
+    public static final int MAX_NAME_LENGTH = 32;
+    public static final long STARTING_BANKROLL = 1000;
+
+    // Slot layout
+    private static final int USED = 0;
+    private static final int NAME_HASH = 4;
+    private static final int NAME_LENGTH = 8;
+    private static final int NAME = 10; // MAX_NAME_LENGTH chars
+    private static final int HANDS = 76;
+    private static final int WINS = 80;
+    private static final int LOSSES = 84;
+    private static final int PUSHES = 88;
+    private static final int BANKROLL = 96;
+    private static final int PREFERENCES = 104;
+
+    private static final int COUNT = 12; // Header field: profiles in use
+
+    private final FileChannel channel; // Kept open for locking
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private ProfileStore(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    // Opens the store, creating it with the given number of slots if the file is new
+    public static ProfileStore open(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            // Another server creating the file at the same time must not see it half set up
+            lock = channel.lock(0, HEADER_SIZE, false);
+            boolean existing = channel.size() >= HEADER_SIZE;
+            if (existing) {
+                capacity = (int) ((channel.size() - HEADER_SIZE) / SLOT_SIZE);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            if (existing) {
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new IOException("Not a profile store: " + path);
+                }
+            } else {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, 1);
+                buffer.putInt(8, capacity);
+                buffer.putInt(COUNT, 0);
+            }
+            return new ProfileStore(channel, buffer, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } finally {
+            release(lock);
+        }
+    }
+
+    // Returns the slot for this player, creating a fresh profile if needed, or -1 if the store is full.
+    // Only the first MAX_NAME_LENGTH characters of a name are significant.
+    public synchronized int findOrCreate(String name) {
+        int length = Math.min(name.length(), MAX_NAME_LENGTH);
+        int hash = hash(name, length);
+        int slot = probe(name, length, hash);
+        if (slot < 0 || isUsed(slot)) {
+            return slot;
+        }
+        FileLock lock = null;
+        try {
+            lock = channel.lock(0, HEADER_SIZE, false);
+            // Probe again: another server may have added this player, or taken the slot, meanwhile
+            slot = probe(name, length, hash);
+            if (slot < 0 || isUsed(slot)) {
+                return slot;
+            }
+            int count = buffer.getInt(COUNT);
+            if (count >= capacity * 3 / 4) {
+                return -1; // Keep probe chains short
+            }
+            int base = offset(slot);
+            buffer.putInt(base + NAME_HASH, hash);
+            buffer.putShort(base + NAME_LENGTH, (short) length);
+            for (int i = 0; i < length; i++) {
+                buffer.putChar(base + NAME + i * 2, name.charAt(i));
+            }
+            buffer.putLong(base + BANKROLL, STARTING_BANKROLL);
+            buffer.putInt(base + USED, 1);
+            buffer.putInt(COUNT, count + 1);
+            return slot;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            release(lock);
+        }
+    }
+
+    private static void release(FileLock lock) {
+        if (lock == null || !lock.isValid()) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException e) {
+            // The lock goes with the channel anyway
+        }
+    }
+
+    // The slot holding this name, or the empty slot where it would go, or -1 if every slot is taken
+    private int probe(String name, int length, int hash) {
+        int slot = (hash & 0x7fffffff) % capacity;
+        for (int probes = 0; probes < capacity; probes++) {
+            int base = offset(slot);
+            if (buffer.getInt(base + USED) == 0) {
+                return slot;
+            }
+            if (buffer.getInt(base + NAME_HASH) == hash && nameEquals(base, name, length)) {
+                return slot;
+            }
+            slot = (slot + 1) % capacity;
+        }
+        return -1;
+    }
+
+    private boolean isUsed(int slot) {
+        return buffer.getInt(offset(slot) + USED) != 0;
+    }
+
+    public synchronized void recordOutcome(int slot, byte outcome) {
+        int base = offset(slot);
+        buffer.putInt(base + HANDS, buffer.getInt(base + HANDS) + 1);
+        int field = (outcome == HandHistory.WIN) ? WINS : (outcome == HandHistory.LOSS) ? LOSSES : PUSHES;
+        buffer.putInt(base + field, buffer.getInt(base + field) + 1);
+    }
+
+    public synchronized int getHandsPlayed(int slot) {
+        return buffer.getInt(offset(slot) + HANDS);
+    }
+
+    public synchronized int getWins(int slot) {
+        return buffer.getInt(offset(slot) + WINS);
+    }
+
+    public synchronized int getLosses(int slot) {
+        return buffer.getInt(offset(slot) + LOSSES);
+    }
+
+    public synchronized int getPushes(int slot) {
+        return buffer.getInt(offset(slot) + PUSHES);
+    }
+
+    public synchronized long getBankroll(int slot) {
+        return buffer.getLong(offset(slot) + BANKROLL);
+    }
+
+    public synchronized void setBankroll(int slot, long bankroll) {
+        buffer.putLong(offset(slot) + BANKROLL, bankroll);
+    }
+
+    public synchronized int getPreferences(int slot) {
+        return buffer.getInt(offset(slot) + PREFERENCES);
+    }
+
+    public synchronized void setPreferences(int slot, int preferences) {
+        buffer.putInt(offset(slot) + PREFERENCES, preferences);
+    }
+
+    // Write dirty pages back to the file
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private boolean nameEquals(int base, String name, int length) {
+        if (buffer.getShort(base + NAME_LENGTH) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.getChar(base + NAME + i * 2) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(String name, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + name.charAt(i);
+        }
+        return h;
+    }
+}
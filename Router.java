@@ -0,0 +1,197 @@
+import java.io.*;
+import java.net.*;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Lobby router for running several Server processes. It owns the well-known port,
+// picks the least loaded table that still has a free seat and redirects the client
+// there with "NEW_PORT host:port". Servers register on the control port and keep
+// reporting their load. A tournament started on the router spans every table: the router
+// keeps its leaderboard, and the servers send it their results and ask it for standings.
+public class Router {
+
+    public static final int CLIENT_PORT = 10000;
+    public static final int CONTROL_PORT = 9990;
+    private static final long NODE_TIMEOUT_MILLIS = 5000;
+    // A redirected client that hasn't shown up in the table's load by then isn't coming
+    private static final long RESERVATION_MILLIS = 10_000;
+
+    private final int clientPort;
+    private final int controlPort;
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final Tournament tournament; // null unless the router runs one
+
+    private static class Node {
+        final String host;
+        final int port;
+        volatile int maxPlayers;
+        volatile int players;
+        volatile boolean started;
+        volatile long lastSeen;
+        // When each client sent here but not yet counted in players was sent, oldest first; guarded by the router
+        final Deque<Long> reservations = new ArrayDeque<>();
+
+        Node(String host, int port, int maxPlayers) {
+            this.host = host;
+            this.port = port;
+            this.maxPlayers = maxPlayers;
+            this.lastSeen = System.currentTimeMillis();
+        }
+
+        String address() {
+            return host + ":" + port;
+        }
+    }
+
+    public Router(int clientPort, int controlPort, Tournament tournament) {
+        this.clientPort = clientPort;
+        this.controlPort = controlPort;
+        this.tournament = tournament;
+    }
+
+    public void start() throws IOException {
+        ServerSocket controlSocket = new ServerSocket(controlPort);
+        ServerSocket clientSocket = new ServerSocket(clientPort);
+        log("Router accepting clients on " + clientPort + ", tables register on " + controlPort);
+
+        Thread controlThread = new Thread(() -> {
+            while (true) {
+                try {
+                    Socket socket = controlSocket.accept();
+                    new Thread(() -> handleNode(socket)).start();
+                } catch (IOException e) {
+                    log("Error accepting table: " + e.getMessage());
+                }
+            }
+        });
+        controlThread.start();
+
+        while (true) {
+            try (Socket socket = clientSocket.accept()) {
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                Node node = pickNode();
+                if (node != null) {
+                    out.println("NEW_PORT " + node.address());
+                    log("Sent " + socket.getInetAddress() + " to " + node.address());
+                } else {
+                    out.println("SERVER_FULL");
+                    log("No free seat for " + socket.getInetAddress());
+                }
+            } catch (IOException e) {
+                log("Error with client connection: " + e.getMessage());
+            }
+        }
+    }
+
+    // REGISTER <host> <port> <maxPlayers>, then LOAD <players> <started 0|1> lines. During a
+    // tournament also RESULT <outcome> <player> for every hand, and RANK <player> and TOP after
+    // every round, which are answered on the same connection.
+    private void handleNode(Socket socket) {
+        Node node = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts[0].equals("REGISTER") && parts.length == 4) {
+                    node = new Node(parts[1], Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                    nodes.put(node.address(), node);
+                    log("Table registered: " + node.address() + " (" + node.maxPlayers + " seats)");
+                    if (tournament != null) {
+                        out.println("TOURNAMENT " + tournament.getStartMillis() + " " + tournament.getEndMillis()
+                                + " " + tournament.getName());
+                    }
+                } else if (parts[0].equals("LOAD") && parts.length == 3 && node != null) {
+                    int players = Integer.parseInt(parts[1]);
+                    synchronized (this) {
+                        // New players are taken to be the clients sent here longest ago
+                        for (int arrived = players - node.players; arrived > 0 && !node.reservations.isEmpty(); arrived--) {
+                            node.reservations.poll();
+                        }
+                        node.players = players;
+                        node.started = parts[2].equals("1");
+                    }
+                    node.lastSeen = System.currentTimeMillis();
+                } else if (parts[0].equals("RESULT") && parts.length >= 3 && tournament != null) {
+                    String[] result = line.split(" ", 3);
+                    tournament.record(result[2], Byte.parseByte(result[1]));
+                } else if (parts[0].equals("RANK") && parts.length >= 2 && tournament != null) {
+                    String player = line.substring("RANK ".length());
+                    Leaderboard leaderboard = tournament.getLeaderboard();
+                    out.println("RANK " + leaderboard.getRank(player) + " " + leaderboard.getPlayerCount() + " "
+                            + leaderboard.getScore(player) + " " + player);
+                } else if (parts[0].equals("TOP") && tournament != null) {
+                    // The version is read first, so a change while the list is built is sent again later
+                    Leaderboard leaderboard = tournament.getLeaderboard();
+                    long version = leaderboard.getTopVersion();
+                    out.println("TOP " + version + " "
+                            + String.join(" ", leaderboard.getTop(leaderboard.getTopSize())));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log("Table connection error: " + e.getMessage());
+        } finally {
+            // A table that reconnected has already replaced this entry
+            if (node != null && nodes.remove(node.address(), node)) {
+                log("Table left: " + node.address());
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private synchronized Node pickNode() {
+        long now = System.currentTimeMillis();
+        Node best = null;
+        int bestLoad = 0;
+        for (Node node : nodes.values()) {
+            while (!node.reservations.isEmpty() && now - node.reservations.peek() > RESERVATION_MILLIS) {
+                node.reservations.poll();
+            }
+            int load = node.players + node.reservations.size();
+            if (node.started || load >= node.maxPlayers || now - node.lastSeen > NODE_TIMEOUT_MILLIS) {
+                continue;
+            }
+            if (best == null || load < bestLoad) {
+                best = node;
+                bestLoad = load;
+            }
+        }
+        if (best != null) {
+            best.reservations.add(now);
+        }
+        return best;
+    }
+
+    private void log(String message) {
+        System.out.println(message);
+    }
+
+    public static void main(String[] args) {
+        int clientPort = (args.length > 0) ? Integer.parseInt(args[0]) : CLIENT_PORT;
+        int controlPort = (args.length > 1) ? Integer.parseInt(args[1]) : CONTROL_PORT;
+        // The same -Dblackjack.tournament properties as a Server; behind the router, set them here
+        Tournament tournament = null;
+        String tournamentName = System.getProperty("blackjack.tournament");
+        if (tournamentName != null) {
+            long start;
+            try {
+                start = Tournament.parseStart(System.getProperty("blackjack.tournamentStart"));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                System.err.println("Can't read tournament start, starting now");
+                start = System.currentTimeMillis();
+            }
+            long minutes = Long.getLong("blackjack.tournamentMinutes", 60);
+            tournament = new Tournament(tournamentName, start, start + minutes * 60_000);
+            System.out.println("Tournament " + tournamentName + " runs for " + minutes + " minutes, for every table");
+        }
+        try {
+            new Router(clientPort, controlPort, tournament).start();
+        } catch (IOException e) {
+            System.err.println("Can't start router: " + e.getMessage());
+        }
+    }
+}
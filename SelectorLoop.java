@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// One selector thread for every non-blocking endpoint of a table: spectators and browser players.
+// Each key's attachment is the Handler for its channel. Other threads never touch the selector
+// itself; a writer that has to wait for the socket sets OP_WRITE on its key and wakes the selector.
+public class SelectorLoop {
+
+    private static final long HOUSEKEEPING_MILLIS = 1000;
+
+    public interface Handler {
+        // Called on the selector thread when the key is ready; throwing closes the key
+        void ready(SelectionKey key) throws IOException;
+
+        default void close(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    private final Selector selector;
+    private final Table table;
+    private final List<Runnable> housekeeping = new CopyOnWriteArrayList<>();
+
+    public SelectorLoop(Table table) throws IOException {
+        this.selector = Selector.open();
+        this.table = table;
+    }
+
+    public SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+        channel.configureBlocking(false);
+        return channel.register(selector, ops, handler);
+    }
+
+    // Runs on the selector thread about once a second
+    public void everySecond(Runnable task) {
+        housekeeping.add(task);
+    }
+
+    public Set<SelectionKey> keys() {
+        return selector.keys();
+    }
+
+    public void start() {
+        Thread loop = new Thread(this::runLoop, "selector");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    private void runLoop() {
+        long lastHousekeeping = System.currentTimeMillis();
+        while (selector.isOpen()) {
+            try {
+                selector.select(HOUSEKEEPING_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        handler.ready(key);
+                    } catch (IOException | CancelledKeyException e) {
+                        handler.close(key);
+                    } catch (RuntimeException e) {
+                        table.log("Error on the selector: " + e);
+                        handler.close(key);
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastHousekeeping >= HOUSEKEEPING_MILLIS) {
+                    lastHousekeeping = now;
+                    housekeeping.forEach(Runnable::run);
+                }
+            } catch (IOException e) {
+                table.log("Selector error: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,34 +1,113 @@
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.security.SecureRandom;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
 
-public class Server extends JFrame {
+public class Server extends JFrame implements TableHost {
 
     private ServerSocket serverSocket;
-    private final int initialPort = 10000;
+    public static final int DEFAULT_PORT = 10000;
+    private final int initialPort;
     private int maxPlayers;
-    private List<ClientHandler> clients = new ArrayList<>();
-    private Deck deck;
-    private boolean gameStarted = false;
-    private DealerAI dealer;
-    private GameManager gameManager;
-    private Set<Integer> usedPorts = new HashSet<>();
+    private Table table;
+    private ProfileStore profiles;
+    // 64 chunks of 65536 rows each, roughly four million rounds
+    private HandHistory history = new HandHistory(Integer.getInteger("blackjack.historyChunks", 64));
+    private Set<Integer> usedPorts = ConcurrentHashMap.newKeySet();
+    // Handshakes in progress, each on its own thread so a slow client only holds up itself.
+    // Beyond this many at once new connections are turned away.
+    private static final int MAX_PENDING_JOINS = Integer.getInteger("blackjack.pendingJoins", 16);
+    private final ThreadPoolExecutor joinPool = new ThreadPoolExecutor(MAX_PENDING_JOINS, MAX_PENDING_JOINS,
+            30, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "join");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    // Lines for the router's tournament. The game thread only queues them and the router thread
+    // writes them, so a slow or missing router never holds up a round.
+    private static final int MAX_ROUTER_BACKLOG = 4096;
+    private final BlockingQueue<String> toRouter = new ArrayBlockingQueue<>(MAX_ROUTER_BACKLOG);
+    private volatile boolean routerBehind;
 
     private JTextArea logArea; // Text area to display server logs
     private JButton startButton; // Button to start the game
     private JLabel playerCountLabel; // Label to display the number of connected players
     private JButton newRoundButton; // Button to start a new round
+    private JButton statsButton; // Button to print hand history statistics
+    private JButton oddsButton; // Button to print odds for the current shoe
+    private JButton drainButton; // Button to finish the round and hand the table to another server
 
     public Server(int maxPlayers) {
-        super("Blackjack Server");
+        this(maxPlayers, DEFAULT_PORT, null);
+    }
+
+    // routerAddress is host:port of a Router control port, or null for a standalone table
+    public Server(int maxPlayers, int port, String routerAddress) {
+        super("Blackjack Server :" + port);
         this.maxPlayers = maxPlayers;
+        this.initialPort = port;
         setupGUI();
+        openProfiles();
+        // Set -Dblackjack.seed to replay a table's decks exactly
+        String seedProperty = System.getProperty("blackjack.seed");
+        long seed = (seedProperty != null) ? Long.parseLong(seedProperty) : new SecureRandom().nextLong();
+        table = new Table("table-" + port, maxPlayers, seed, profiles, history, this);
+        table.setGameThread(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "table-" + port);
+            thread.setDaemon(true);
+            return thread;
+        }));
+        // Set -Dblackjack.tournament=<name> to score this table's rounds on a leaderboard in this process.
+        // Behind a router running a tournament, the router's takes over and ranks every table's players.
+        String tournamentName = System.getProperty("blackjack.tournament");
+        if (tournamentName != null) {
+            long start = tournamentStart(System.getProperty("blackjack.tournamentStart"));
+            long minutes = Long.getLong("blackjack.tournamentMinutes", 60);
+            table.setTournament(new Tournament(tournamentName, start, start + minutes * 60_000));
+            log("Tournament " + tournamentName + " runs for " + minutes + " minutes from "
+                    + Instant.ofEpochMilli(start).atZone(ZoneId.systemDefault()).toLocalDateTime());
+        }
+        // Set -Dblackjack.adopt to take over a table another server handed off
+        String adoptPath = System.getProperty("blackjack.adopt");
+        if (adoptPath != null) {
+            adopt(Paths.get(adoptPath));
+        }
+        openSnapshots(adoptPath == null);
         setupServer();
-        gameManager = new GameManager(this);
+        setupSelectorEndpoints();
+        setupSharedMemory();
         usedPorts.add(initialPort);
+        if (adoptPath != null) {
+            acknowledgeAdoption(Paths.get(adoptPath));
+        }
+        if (routerAddress != null) {
+            connectToRouter(routerAddress);
+        }
+    }
+
+    // -Dblackjack.tournamentStart is epoch millis or a local time like 2026-10-20T18:00; unset means now
+    private long tournamentStart(String start) {
+        try {
+            return Tournament.parseStart(start);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            log("Can't read tournament start " + start + ", starting now");
+            return System.currentTimeMillis();
+        }
     }
 
     private void setupGUI() {
@@ -45,9 +124,18 @@ public class Server extends JFrame {
         newRoundButton = new JButton("New Round");
         newRoundButton.setEnabled(false);
         newRoundButton.addActionListener(e -> startNewRound()); // Add action listener for the new round button
+        statsButton = new JButton("Stats");
+        statsButton.addActionListener(e -> showStats());
+        oddsButton = new JButton("Odds");
+        oddsButton.addActionListener(e -> showOdds());
+        drainButton = new JButton("Drain");
+        drainButton.addActionListener(e -> drain());
         JPanel controlPanel = new JPanel();
         controlPanel.add(startButton);
         controlPanel.add(newRoundButton); // Add the new round button to the control panel
+        controlPanel.add(statsButton);
+        controlPanel.add(oddsButton);
+        controlPanel.add(drainButton);
 
         playerCountLabel = new JLabel("Connected Player: 0/" + maxPlayers);
 
@@ -60,54 +148,40 @@ public class Server extends JFrame {
         setVisible(true);
     }
 
+    private void openProfiles() {
+        String path = System.getProperty("blackjack.profiles", "profiles.dat");
+        try {
+            profiles = ProfileStore.open(Paths.get(path), 65536);
+            Runtime.getRuntime().addShutdownHook(new Thread(profiles::flush));
+            log("Player profiles: " + path);
+        } catch (IOException e) {
+            log("Can't open player profiles, playing without them: " + e.getMessage());
+        }
+    }
+
     private void setupServer() {
         try {
             // Create server socket port 10000
             serverSocket = new ServerSocket(initialPort);
             log("Server waiting for players at initial port " + initialPort);
-            // Create new Thread
+            joinPool.allowCoreThreadTimeOut(true);
+            // The acceptor only hands connections to the join pool, so it never waits on a slow client
             Thread acceptThread = new Thread(() -> {
-                while (!gameStarted && clients.size() < maxPlayers) {
+                while (true) {
                     try {
                         Socket initialClientSocket = serverSocket.accept();
-                        int newClientPort = findAvailablePort();
-
-                        if (newClientPort != -1) {
-                            // Create OutputStream Inform the client to reconnect to the new port
-                            PrintWriter outToClient = new PrintWriter(initialClientSocket.getOutputStream(), true);
-                            outToClient.println("NEW_PORT " + newClientPort);
-
-                            ServerSocket clientServerSocket = new ServerSocket(newClientPort);
-                            Socket clientSocket = clientServerSocket.accept();
-
-                            ClientHandler client = new ClientHandler(clientSocket, this);
-                            clients.add(client);
-                            new Thread(client).start();
-                            log("New player connected on port " + newClientPort + ": " + clientSocket.getInetAddress()
-                                    + " (" + client.getPlayerName() + ")");
-                            updatePlayerCount();
-
-                            outToClient.close();
-                            initialClientSocket.close();
-                            clientServerSocket.close();
-                        }
-                        // Error handling
-                        else {
-                            log("No available port for new client. Connection refused.");
-                            PrintWriter outToClient = new PrintWriter(initialClientSocket.getOutputStream(), true);
-                            outToClient.println("SERVER_FULL");
-                            outToClient.close();
-                            initialClientSocket.close();
+                        try {
+                            joinPool.execute(() -> handleJoin(initialClientSocket));
+                        } catch (RejectedExecutionException e) {
+                            log("Too many pending joins. Connection refused.");
+                            rejectFull(initialClientSocket);
                         }
                     } catch (IOException e) {
                         log("Error with client connection: " + e.getMessage());
                     }
                 }
-                if (clients.size() == maxPlayers && !gameStarted) {
-                    SwingUtilities.invokeLater(() -> startButton.setEnabled(true));
-                    log("All players have joined (" + maxPlayers + " players), ready to start.");
-                }
             });
+            acceptThread.setDaemon(true);
             acceptThread.start();
 
         } catch (IOException e) {
@@ -115,6 +189,365 @@ public class Server extends JFrame {
         }
     }
 
+    // Moves the client to its own port, reads its name and seats or waitlists it
+    private void handleJoin(Socket initialClientSocket) {
+        TableEvents.Handshake event = new TableEvents.Handshake();
+        event.begin();
+        int newClientPort = findAvailablePort();
+        if (newClientPort == -1) {
+            log("No available port for new client. Connection refused.");
+            rejectFull(initialClientSocket);
+            return;
+        }
+        try (ServerSocket clientServerSocket = new ServerSocket(newClientPort)) {
+            // Create OutputStream Inform the client to reconnect to the new port
+            PrintWriter outToClient = new PrintWriter(initialClientSocket.getOutputStream(), true);
+            outToClient.println("NEW_PORT " + newClientPort);
+            clientServerSocket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            Socket clientSocket = clientServerSocket.accept();
+            initialClientSocket.close();
+
+            clientSocket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            Transport transport = new TcpTransport(clientSocket);
+            ClientHandler client = new ClientHandler(transport, table);
+            clientSocket.setSoTimeout(0);
+            if (client.getPlayerName() == null) {
+                transport.close();
+                usedPorts.remove(newClientPort);
+                return;
+            }
+            if (!admit(client, transport)) {
+                usedPorts.remove(newClientPort);
+                return;
+            }
+            new Thread(client).start();
+            log("New player connected on port " + newClientPort + ": " + clientSocket.getInetAddress()
+                    + " (" + client.getPlayerName() + ")");
+            if (event.shouldCommit()) {
+                event.tableId = table.getTableId();
+                event.player = client.getPlayerName();
+                event.transport = "tcp";
+                event.commit();
+            }
+        } catch (IOException e) {
+            log("Error with client connection: " + e.getMessage());
+            usedPorts.remove(newClientPort);
+            try {
+                initialClientSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Seats or waitlists a player who got through the handshake. Returns false, with the connection
+    // closed, if the table is full or has moved to another server.
+    private boolean admit(ClientHandler client, Transport transport) {
+        switch (table.admit(client)) {
+            case FULL -> {
+                log("Table and waitlist are full, turned away " + client.getPlayerName());
+                client.sendMessage("SERVER_FULL");
+            }
+            case REDIRECTED -> log("Sent " + client.getPlayerName() + " on to the table's new server");
+            default -> {
+                return true;
+            }
+        }
+        transport.close();
+        return false;
+    }
+
+    // Snapshots the table after every round, unless -Dblackjack.snapshots=false. The snapshot is
+    // deleted when the server shuts down cleanly, so one is only left behind by a crash. A server
+    // started with -Dblackjack.recover resumes the table from it, holding seats for the players who rejoin.
+    private void openSnapshots(boolean restore) {
+        if ("false".equals(System.getProperty("blackjack.snapshots"))) {
+            return;
+        }
+        try {
+            SnapshotStore snapshots = new SnapshotStore(Paths.get(System.getProperty("blackjack.snapshotDir", "snapshots")));
+            TableSnapshot last = (restore && Boolean.getBoolean("blackjack.recover"))
+                    ? snapshots.load(table.getTableId()) : null;
+            if (last != null) {
+                log("Recovering table from its last snapshot");
+                table.restore(last);
+                if (table.isGameStarted()) {
+                    roundOver();
+                }
+            }
+            table.setSnapshotStore(snapshots);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    snapshots.close();
+                    snapshots.discard(table.getTableId());
+                } catch (IOException | InterruptedException e) {
+                    System.err.println("Can't remove snapshot of " + table.getTableId() + ": " + e.getMessage());
+                }
+            }, "snapshot-cleanup"));
+        } catch (IOException e) {
+            log("Can't use table snapshots, playing without them: " + e.getMessage());
+        }
+    }
+
+    private void adopt(Path path) {
+        try {
+            table.restore(TableSnapshot.read(path));
+            if (table.isGameStarted()) {
+                roundOver();
+            }
+        } catch (IOException e) {
+            log("Can't adopt table from " + path + ": " + e.getMessage());
+        }
+    }
+
+    // Once this server is listening, renaming the handoff file tells the old server to send its players here
+    private void acknowledgeAdoption(Path path) {
+        try {
+            Files.move(path, path.resolveSibling(path.getFileName() + ".adopted"));
+        } catch (IOException e) {
+            log("Can't acknowledge handoff: " + e.getMessage());
+        }
+    }
+
+    // Asks where the table is going, then finishes the current round, writes the table to a
+    // handoff file and waits for a server started with -Dblackjack.adopt=<file> to take it over
+    private void drain() {
+        String target = JOptionPane.showInputDialog(this, "Hand the table off to (host:port):",
+                "localhost:" + (initialPort + 1000));
+        if (target == null || target.indexOf(':') < 0) {
+            return;
+        }
+        drainButton.setEnabled(false);
+        newRoundButton.setEnabled(false);
+        table.drain();
+        new Thread(() -> {
+            try {
+                while (table.isGameStarted() && !table.isRoundOver()) {
+                    Thread.sleep(100);
+                }
+                Path dir = Paths.get(System.getProperty("blackjack.snapshotDir", "snapshots"));
+                Files.createDirectories(dir);
+                Path handoff = dir.resolve(table.getTableId() + ".handoff");
+                table.snapshot().write(handoff);
+                log("Table written to " + handoff + ". Start the new server with -Dblackjack.adopt=" + handoff);
+                Path adopted = handoff.resolveSibling(handoff.getFileName() + ".adopted");
+                while (!Files.exists(adopted)) {
+                    Thread.sleep(200);
+                }
+                Files.delete(adopted);
+                table.redirect(target);
+                log("Handoff to " + target + " done, this server can be stopped.");
+            } catch (IOException e) {
+                log("Handoff failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }, "handoff").start();
+    }
+
+    private void rejectFull(Socket socket) {
+        try {
+            PrintWriter outToClient = new PrintWriter(socket.getOutputStream(), true);
+            outToClient.println("SERVER_FULL");
+            socket.close();
+        } catch (IOException e) {
+        }
+    }
+
+    // Spectators and browser players share one selector thread; a TCP player has a reader thread
+    // and a writer thread of its own
+    private void setupSelectorEndpoints() {
+        SelectorLoop loop;
+        try {
+            loop = new SelectorLoop(table);
+        } catch (IOException e) {
+            log("Can't open a selector, no spectators or browser players: " + e.getMessage());
+            return;
+        }
+        setupSpectatorServer(loop);
+        setupWebSocketGateway(loop);
+        loop.start();
+    }
+
+    private void setupSpectatorServer(SelectorLoop loop) {
+        try {
+            // Spectators watch one port below the table's initial port
+            new SpectatorServer(initialPort - 1, table, loop).start();
+            log("Spectators can watch at port " + (initialPort - 1));
+        } catch (IOException e) {
+            log("Can't open spectator port: " + e.getMessage());
+        }
+    }
+
+    // Browser players, only when -Dblackjack.wsPort is set: each table on a host needs its own port
+    private void setupWebSocketGateway(SelectorLoop loop) {
+        int webSocketPort = Integer.getInteger("blackjack.wsPort", 0);
+        if (webSocketPort <= 0) {
+            return;
+        }
+        try {
+            new WebSocketGateway(webSocketPort, table, joinPool, loop).start();
+        } catch (IOException e) {
+            log("Can't open WebSocket port " + webSocketPort + ": " + e.getMessage());
+        }
+    }
+
+    // Co-located players connect through ring files they create in -Dblackjack.shmDir
+    private void setupSharedMemory() {
+        String dirProperty = System.getProperty("blackjack.shmDir");
+        if (dirProperty == null) {
+            return;
+        }
+        try {
+            Path dir = Files.createDirectories(Paths.get(dirProperty));
+            WatchService watcher = dir.getFileSystem().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            log("Local players can connect through " + dir);
+            Thread watchThread = new Thread(() -> {
+                while (true) {
+                    try {
+                        WatchKey key = watcher.take();
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.context() instanceof Path name
+                                    && name.toString().endsWith(SharedMemoryTransport.SUFFIX)) {
+                                Path ring = dir.resolve(name);
+                                new Thread(() -> handleSharedMemoryJoin(ring)).start();
+                            }
+                        }
+                        key.reset();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "shm-watcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException e) {
+            log("Can't watch " + dirProperty + " for local players: " + e.getMessage());
+        }
+    }
+
+    // Reads the name from a new ring file and seats or waitlists the player, like handleJoin
+    private void handleSharedMemoryJoin(Path ring) {
+        TableEvents.Handshake event = new TableEvents.Handshake();
+        event.begin();
+        try {
+            Transport transport = SharedMemoryTransport.open(ring);
+            ClientHandler client = new ClientHandler(transport, table);
+            if (client.getPlayerName() == null) {
+                transport.close();
+                return;
+            }
+            if (!admit(client, transport)) {
+                return;
+            }
+            new Thread(client).start();
+            log("New local player connected through shared memory (" + client.getPlayerName() + ")");
+            if (event.shouldCommit()) {
+                event.tableId = table.getTableId();
+                event.player = client.getPlayerName();
+                event.transport = "shm";
+                event.commit();
+            }
+        } catch (IOException e) {
+            log("Error with shared memory connection " + ring + ": " + e.getMessage());
+        }
+    }
+
+    // Registers this table with the router and reports its load every second, reconnecting if the router restarts
+    private void connectToRouter(String routerAddress) {
+        String[] hostPort = routerAddress.split(":");
+        String advertisedHost = System.getProperty("blackjack.host", "localhost");
+        Thread routerThread = new Thread(() -> {
+            while (true) {
+                try (Socket socket = new Socket(hostPort[0], Integer.parseInt(hostPort[1]))) {
+                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                    // Waitlist places count as capacity, since waitlisted players get a seat next round
+                    out.println("REGISTER " + advertisedHost + " " + initialPort + " "
+                            + (maxPlayers + table.getMaxWaitlist()));
+                    log("Registered with router " + routerAddress);
+                    Thread reader = new Thread(() -> readRouter(socket), "router-reader");
+                    reader.setDaemon(true);
+                    reader.start();
+                    long nextLoad = 0;
+                    while (!out.checkError()) {
+                        if (System.currentTimeMillis() >= nextLoad) {
+                            out.println("LOAD " + (table.getClients().size() + table.getWaitlistSize()) + " 0");
+                            nextLoad = System.currentTimeMillis() + 1000;
+                        }
+                        String line = toRouter.poll(Math.max(1, nextLoad - System.currentTimeMillis()),
+                                TimeUnit.MILLISECONDS);
+                        if (line != null) {
+                            out.println(line);
+                        }
+                    }
+                } catch (IOException e) {
+                    log("Router " + routerAddress + " unavailable: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        routerThread.setDaemon(true);
+        routerThread.start();
+    }
+
+    // TOURNAMENT <start> <end> <name> if the router runs one, then its answers to RANK and TOP
+    private void readRouter(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("TOURNAMENT ")) {
+                    String[] parts = line.split(" ", 4);
+                    Tournament tournament = new Tournament(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            new RouterTournament());
+                    table.execute(() -> table.setTournament(tournament));
+                    log("Playing in the router's tournament " + tournament.getName());
+                } else if (line.startsWith("RANK ")) {
+                    String[] parts = line.split(" ", 5);
+                    table.execute(() -> table.sendRank(parts[4], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                            Integer.parseInt(parts[3])));
+                } else if (line.startsWith("TOP ")) {
+                    String[] parts = line.split(" ", 3);
+                    long version = Long.parseLong(parts[1]);
+                    table.execute(() -> table.sendTop(version, parts[2]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The router thread notices the connection is gone when it next writes
+        }
+    }
+
+    // The router keeps the leaderboard; results and requests for standings go out with the load reports
+    private class RouterTournament implements Tournament.Remote {
+        @Override
+        public void record(String player, byte outcome) {
+            sendToRouter("RESULT " + outcome + " " + player);
+        }
+
+        @Override
+        public void requestStandings(List<String> players) {
+            for (String player : players) {
+                sendToRouter("RANK " + player);
+            }
+            sendToRouter("TOP");
+        }
+    }
+
+    private void sendToRouter(String line) {
+        if (toRouter.offer(line)) {
+            routerBehind = false;
+        } else if (!routerBehind) {
+            routerBehind = true;
+            log("Router is " + MAX_ROUTER_BACKLOG + " lines behind, dropping tournament results");
+        }
+    }
+
     private int findAvailablePort() {
         int port = initialPort + 1;
         while (port < 65535) {
@@ -131,107 +564,96 @@ public class Server extends JFrame {
     }
 
     public void updatePlayerCount() {
-        playerCountLabel.setText("Connected player: " + clients.size() + "/" + maxPlayers);
-        if (clients.size() == maxPlayers && !gameStarted) {
+        int players = table.getClients().size();
+        playerCountLabel.setText("Connected player: " + players + "/" + maxPlayers
+                + (table.getWaitlistSize() > 0 ? " (" + table.getWaitlistSize() + " waiting)" : ""));
+        if (players == maxPlayers && !table.isGameStarted()) {
             startButton.setEnabled(true);
             log("All players have joined (" + maxPlayers + " players), ready to start.");
         }
     }
 
     private void startGame() {
-        if (gameStarted)
+        if (table.isGameStarted())
             return;
-        gameStarted = true;
         startButton.setEnabled(false);
         newRoundButton.setEnabled(false);
-        log("Starting Blackjack game with " + clients.size() + " players!");
-        broadcast("GAME_START");
-
-        deck = new Deck();
-        deck.shuffle();
-        dealer = new DealerAI(deck);
-
-        gameManager.startGame(clients, deck, dealer);
-
-        if (!clients.isEmpty()) {
-            clients.get(0).sendMessage("YOUR_TURN");
-        }
+        table.execute(table::startGame);
     }
 
     private void startNewRound() {
-        if (!gameStarted)
+        if (!table.isGameStarted())
             return;
-        gameStarted = false;
         newRoundButton.setEnabled(false);
-        broadcast("REMAINING CARDS: " + deck.getRemainingCards().size());
-        if (deck.getRemainingCards().size() > ((clients.size() * 2) + 2)) {
-            dealer.getCards().clear();
-            gameManager.startNewRound(clients, deck, dealer);
-            gameStarted = true;
-            return;
-        }
-        log("Starting new round");
-        broadcast("DECK RAN  OUT OF CARD");
-        deck = new Deck();
-        broadcast("NEW DECK CREATED");
-        deck.shuffle(); 
-        dealer = new DealerAI(deck);
-        gameManager.startNewRound(clients, deck, dealer);
-        gameStarted = true;
-        log("Starting new round");
-
+        table.execute(table::startNewRound);
     }
 
-    public void enableNewRoundButton() {
-        SwingUtilities.invokeLater(() -> newRoundButton.setEnabled(true));
-    }
-
-    public void broadcastDealerFirstCard(Card card) {
-        broadcast("DEALER_FIRST_CARD " + card.toString());
+    // Queries scan the whole history, so run them off the event thread
+    private void showStats() {
+        new Thread(() -> {
+            StringBuilder sb = new StringBuilder("--- Hand history: " + history.getRoundCount() + " rounds ---\n");
+            sb.append(String.format("Average round length: %.0f ms%n", history.averageRoundMillis()));
+            for (Map.Entry<String, Double> entry : history.winRateByPlayer().entrySet()) {
+                sb.append(String.format("Win rate %s: %.1f%%%n", entry.getKey(), entry.getValue() * 100));
+            }
+            double[] bustRates = history.dealerBustRateByUpCard();
+            for (int upCard = 2; upCard < bustRates.length; upCard++) {
+                if (!Double.isNaN(bustRates[upCard])) {
+                    sb.append(String.format("Dealer bust rate, up card %s: %.1f%%%n",
+                            upCard == 11 ? "A" : String.valueOf(upCard), bustRates[upCard] * 100));
+                }
+            }
+            Tournament tournament = table.getTournament();
+            if (tournament != null && tournament.isRemote()) {
+                sb.append("Tournament ").append(tournament.getName()).append(", standings on the router");
+            } else if (tournament != null) {
+                Leaderboard leaderboard = tournament.getLeaderboard();
+                sb.append("Tournament ").append(tournament.getName()).append(", ")
+                        .append(leaderboard.getPlayerCount()).append(" players: ")
+                        .append(String.join(" ", leaderboard.getTop(leaderboard.getTopSize())));
+            }
+            log(sb.toString().trim());
+        }).start();
     }
 
-    public void broadcast(String message) {
-        for (ClientHandler client : clients) {
-            client.sendMessage(message);
-        }
+    private void showOdds() {
+        log(table.oddsReport());
     }
 
-    public Deck getDeck() {
-        return deck;
+    public Table getTable() {
+        return table;
     }
 
-    public void log(String message) {
-        SwingUtilities.invokeLater(() -> logArea.append(message + "\n"));
+    @Override
+    public void roundOver() {
+        SwingUtilities.invokeLater(() -> newRoundButton.setEnabled(!table.isDraining()));
     }
 
-    public void handleClientAction(ClientHandler client, String action) {
-        gameManager.handlePlayerAction(client, action);
+    @Override
+    public void playersChanged() {
+        // Joins and leaves come from the join pool and the table's game thread
+        SwingUtilities.invokeLater(this::updatePlayerCount);
     }
 
-    public void removeClient(ClientHandler client) {
-        clients.remove(client);
+    @Override
+    public void playerLeft(ClientHandler client) {
         usedPorts.remove(client.getClientPort());
-        updatePlayerCount();
-        broadcast(client.getPlayerName() + " LEFT");
     }
 
-    public void sendMessageToClient(ClientHandler client, String message) {
-        client.sendMessage(message);
-    }
-
-    public void broadcastFromGameManager(String message) {
-        broadcast(message);
-    }
-
-    public List<ClientHandler> getClients() {
-        return clients;
-    }
-
-    public DealerAI getDealer() {
-        return dealer;
+    @Override
+    public void log(String message) {
+        SwingUtilities.invokeLater(() -> logArea.append(message + "\n"));
     }
 
+    // java Server [maxPlayers [port [routerHost:routerPort]]]
     public static void main(String[] args) {
+        if (args.length > 0) {
+            int maxPlayers = Integer.parseInt(args[0]);
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+            String routerAddress = (args.length > 2) ? args[2] : null;
+            SwingUtilities.invokeLater(() -> new Server(maxPlayers, port, routerAddress));
+            return;
+        }
         String maxPlayersStr = JOptionPane.showInputDialog("Enter maximum number of players:", "2");
         try {
             int maxPlayers = Integer.parseInt(maxPlayersStr);
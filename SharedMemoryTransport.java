@@ -0,0 +1,205 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
+// A connection between two processes on the same host through a memory-mapped file. The file
+// holds two single-producer single-consumer byte rings, one per direction. Each ring's head
+// and tail are published with release stores and read with acquire loads, so sending or
+// receiving a line is a memory copy with no system call. An idle reader spins briefly, then
+// yields, then parks in naps that lengthen the longer it stays idle. A writer never waits: a
+// peer that lets its ring fill up is disconnected. Each side records its pid, so a peer that
+// dies without closing the ring is noticed and treated as end of stream.
+//
+// A client creates the file in a directory the server watches (see Server, -Dblackjack.shmDir)
+// and the server opens it; after that both sides use it like any other Transport.
+public class SharedMemoryTransport implements Transport {
+
+    public static final String SUFFIX = ".ring";
+    private static final int MAGIC = 0x424a524e; // "BJRN"
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    // File layout: a 64 byte header, then the server-to-client ring, then the client-to-server ring.
+    // Counters sit on their own 64 byte lines so the two sides don't share a cache line.
+    private static final int HEADER = 64;
+    private static final int CLOSED = 8; // One long per side in the header: 8 for the server, 16 for the client
+    private static final int PID = 24;   // Likewise: 24 for the server, 32 for the client
+    private static final int RING_HEADER = 128;
+    private static final int TAIL = 0;  // Bytes ever written, only stored by the producer
+    private static final int HEAD = 64; // Bytes ever read, only stored by the consumer
+    private static final int SPINS = 200;   // Idle checks that busy-wait
+    private static final int YIELDS = 1200; // then give up the CPU, which matters when the peer shares it
+    private static final long PARK_NANOS = 50_000; // First nap, doubled every PARKS_PER_STEP naps
+    private static final int PARKS_PER_STEP = 200;
+    private static final int MAX_DOUBLINGS = 5; // Naps stop growing at 1.6 ms
+    private static final long LIVENESS_CHECK_NANOS = 100_000_000;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final boolean server;
+    private final int capacity;
+    private final int inRing;
+    private final int outRing;
+    private long readPosition;  // Local copy of the inbound head
+    private long writePosition; // Local copy of the outbound tail
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    private volatile long livenessCheckedAt = System.nanoTime();
+
+    private SharedMemoryTransport(Path path, MappedByteBuffer buffer, boolean server) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        this.server = server;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a ring file: " + path);
+        }
+        this.capacity = buffer.getInt(4);
+        int serverToClient = HEADER;
+        int clientToServer = HEADER + RING_HEADER + capacity;
+        this.inRing = server ? clientToServer : serverToClient;
+        this.outRing = server ? serverToClient : clientToServer;
+        this.readPosition = (long) LONGS.getAcquire(buffer, inRing + HEAD);
+        this.writePosition = (long) LONGS.getAcquire(buffer, outRing + TAIL);
+        LONGS.setRelease(buffer, server ? PID : PID + 8, ProcessHandle.current().pid());
+    }
+
+    // Client side: creates a ring file in the server's directory. It is written under a temporary
+    // name and renamed, so the server never opens a file that isn't set up yet.
+    public static SharedMemoryTransport connect(Path dir) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path temp = dir.resolve(id + ".tmp");
+        Path path = dir.resolve(id + SUFFIX);
+        MappedByteBuffer buffer = map(temp, HEADER + 2 * (RING_HEADER + DEFAULT_CAPACITY));
+        buffer.putInt(4, DEFAULT_CAPACITY);
+        buffer.putInt(0, MAGIC);
+        buffer.force();
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        return new SharedMemoryTransport(path, buffer, false);
+    }
+
+    // Server side: opens a ring file a client has created
+    public static SharedMemoryTransport open(Path path) throws IOException {
+        return new SharedMemoryTransport(path, map(path, 0), true);
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    (size > 0) ? size : channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        int idle = 0;
+        while (true) {
+            long available = (long) LONGS.getAcquire(buffer, inRing + TAIL);
+            while (readPosition < available) {
+                byte b = buffer.get(inRing + RING_HEADER + (int) (readPosition++ % capacity));
+                if (b == '\n') {
+                    LONGS.setRelease(buffer, inRing + HEAD, readPosition);
+                    String result = line.toString(StandardCharsets.UTF_8);
+                    line.reset();
+                    return result;
+                }
+                line.write(b);
+            }
+            LONGS.setRelease(buffer, inRing + HEAD, readPosition);
+            if (isClosed(!server) || isClosed(server)) {
+                // Anything the peer wrote before closing has been read by now
+                if ((long) LONGS.getAcquire(buffer, inRing + TAIL) == readPosition) {
+                    return null;
+                }
+                continue;
+            }
+            idle = pause(idle);
+            if (idle < 0) {
+                return null; // The peer died; whatever it sent before that has been read
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        if (isClosed(!server) || isClosed(server)) {
+            throw new IOException("Ring closed");
+        }
+        // Never waits for room: writes come from the table's game thread, so a peer that has let
+        // the ring fill up is dropped, like a TCP player whose send queue is full
+        long free = capacity - (writePosition - (long) LONGS.getAcquire(buffer, outRing + HEAD));
+        if (free < frame.length) {
+            close();
+            throw new IOException("Fell " + capacity + " bytes behind, disconnected");
+        }
+        // Copy in two pieces when the frame wraps past the end of the ring
+        int start = (int) (writePosition % capacity);
+        int first = Math.min(frame.length, capacity - start);
+        buffer.put(outRing + RING_HEADER + start, frame, 0, first);
+        buffer.put(outRing + RING_HEADER, frame, first, frame.length - first);
+        writePosition += frame.length;
+        LONGS.setRelease(buffer, outRing + TAIL, writePosition);
+    }
+
+    // Waits for the peer, longer the longer this side has been idle. Returns the next idle count,
+    // or -1 once the peer's process has exited without closing the ring.
+    private int pause(int idle) {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+            return idle + 1;
+        }
+        if (idle < YIELDS) {
+            Thread.yield();
+            return idle + 1;
+        }
+        int doublings = Math.min((idle - YIELDS) / PARKS_PER_STEP, MAX_DOUBLINGS);
+        LockSupport.parkNanos(PARK_NANOS << doublings);
+        long now = System.nanoTime();
+        if (now - livenessCheckedAt > LIVENESS_CHECK_NANOS) {
+            livenessCheckedAt = now;
+            if (!peerAlive()) {
+                return -1;
+            }
+        }
+        return Math.min(idle + 1, YIELDS + PARKS_PER_STEP * MAX_DOUBLINGS);
+    }
+
+    // A client's pid is there from the start; the server's only once it has opened the file
+    private boolean peerAlive() {
+        long pid = (long) LONGS.getAcquire(buffer, server ? PID + 8 : PID);
+        return pid == 0 || ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private boolean isClosed(boolean serverSide) {
+        return (long) LONGS.getAcquire(buffer, serverSide ? CLOSED : CLOSED + 8) != 0;
+    }
+
+    // No port: shared memory connections don't take one from the server
+    @Override
+    public int getLocalPort() {
+        return 0;
+    }
+
+    // The server removes the file; both sides keep the mapping until it is collected
+    @Override
+    public void close() {
+        LONGS.setRelease(buffer, server ? CLOSED : CLOSED + 8, 1L);
+        if (server) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+            }
+        }
+    }
+}
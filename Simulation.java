@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs many tables of bots in one JVM over LoopbackTransport, with no sockets or GUI.
+// Each table is driven by a single thread that pumps both ends of every connection
+// until nothing is left to deliver, so a table's game depends only on its seed.
+// With -Dblackjack.tournament every table shares one leaderboard; standings then depend
+// on how the tables interleave, so the checksum is only reproducible without it.
+// With -Dblackjack.snapshotDir every table is snapshotted after each round, and a later
+// run resumes each table from its snapshot.
+//
+//   java Simulation [tables] [playersPerTable] [rounds] [seed] [threads]
+public class Simulation implements TableHost {
+
+    private final int playersPerTable;
+    private final int rounds;
+    private final HandHistory history;
+    private final boolean verbose = Boolean.getBoolean("blackjack.verbose");
+    private Tournament tournament; // Shared by every table when set
+    private final int handsPerBot = Integer.getInteger("blackjack.hands", 1);
+    private SnapshotStore snapshots; // Set with -Dblackjack.snapshotDir
+    private Map<String, TableSnapshot> restored = Map.of();
+
+    public Simulation(int playersPerTable, int rounds, HandHistory history) {
+        this.playersPerTable = playersPerTable;
+        this.rounds = rounds;
+        this.history = history;
+    }
+
+    // Every table is saved after each round, and a table with a snapshot from an earlier run resumes from it
+    public void setSnapshots(SnapshotStore snapshots, Map<String, TableSnapshot> restored) {
+        this.snapshots = snapshots;
+        this.restored = restored;
+    }
+
+    public void setTournament(Tournament tournament) {
+        this.tournament = tournament;
+    }
+
+    // Plays every round at one table and returns a checksum of what the bots saw
+    public long runTable(String tableId, long seed) throws IOException {
+        Table table = new Table(tableId, playersPerTable, seed, null, history, this);
+        table.setTournament(tournament);
+        table.setSnapshotStore(snapshots);
+        if (restored.containsKey(tableId)) {
+            table.restore(restored.get(tableId));
+        }
+        List<LoopbackTransport> serverEnds = new ArrayList<>();
+        List<LoopbackTransport> botEnds = new ArrayList<>();
+        List<ClientHandler> handlers = new ArrayList<>();
+        List<BotPlayer> bots = new ArrayList<>();
+
+        for (int seat = 0; seat < playersPerTable; seat++) {
+            LoopbackTransport[] pair = LoopbackTransport.pair();
+            BotPlayer bot = new BotPlayer(pair[1], tableId + "-bot" + seat, 17, handsPerBot);
+            bot.join();
+            ClientHandler handler = new ClientHandler(pair[0], table);
+            table.admit(handler);
+            serverEnds.add(pair[0]);
+            botEnds.add(pair[1]);
+            handlers.add(handler);
+            bots.add(bot);
+        }
+
+        pump(serverEnds, handlers, botEnds, bots); // Settles HANDS requests before the first deal
+
+        for (int round = 0; round < rounds; round++) {
+            if (!table.isGameStarted()) {
+                table.startGame();
+            } else {
+                table.startNewRound();
+            }
+            pump(serverEnds, handlers, botEnds, bots);
+            if (!table.isRoundOver()) {
+                throw new IllegalStateException(tableId + " stalled in round " + round);
+            }
+        }
+        table.close();
+
+        long checksum = 0;
+        for (BotPlayer bot : bots) {
+            checksum = checksum * 31 + bot.getChecksum();
+        }
+        return checksum;
+    }
+
+    // Delivers queued lines in a fixed order until both sides are idle
+    private void pump(List<LoopbackTransport> serverEnds, List<ClientHandler> handlers,
+            List<LoopbackTransport> botEnds, List<BotPlayer> bots) throws IOException {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int i = 0; i < bots.size(); i++) {
+                String line;
+                while ((line = botEnds.get(i).pollLine()) != null) {
+                    bots.get(i).onMessage(line);
+                    progress = true;
+                }
+                while ((line = serverEnds.get(i).pollLine()) != null) {
+                    handlers.get(i).handleLine(line);
+                    progress = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
+    @Override
+    public void roundOver() {
+    }
+
+    @Override
+    public void playersChanged() {
+    }
+
+    @Override
+    public void playerLeft(ClientHandler client) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tables = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        int players = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        long seed = (args.length > 3) ? Long.parseLong(args[3]) : 42;
+        int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        HandHistory history = new HandHistory(64);
+        Simulation simulation = new Simulation(players, rounds, history);
+        String snapshotDir = System.getProperty("blackjack.snapshotDir");
+        SnapshotStore snapshots = null;
+        if (snapshotDir != null) {
+            snapshots = new SnapshotStore(Paths.get(snapshotDir));
+            long restoreStart = System.nanoTime();
+            Map<String, TableSnapshot> restored = snapshots.loadAll();
+            System.out.printf("Read %d table snapshots in %.0f ms%n", restored.size(),
+                    (System.nanoTime() - restoreStart) / 1e6);
+            simulation.setSnapshots(snapshots, restored);
+        }
+        String tournamentName = System.getProperty("blackjack.tournament");
+        if (tournamentName != null) {
+            simulation.setTournament(new Tournament(tournamentName, 0, Long.MAX_VALUE));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < tables; i++) {
+            String tableId = "sim-" + i;
+            long tableSeed = seed + i;
+            results.add(pool.submit(() -> simulation.runTable(tableId, tableSeed)));
+        }
+        long checksum = 0;
+        for (Future<Long> result : results) {
+            checksum = checksum * 31 + result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        if (snapshots != null) {
+            snapshots.close();
+        }
+
+        long totalRounds = (long) tables * rounds;
+        System.out.printf("%d tables x %d players x %d rounds on %d threads in %.2f s (%.0f rounds/s)%n",
+                tables, players, rounds, threads, elapsed / 1e9, totalRounds / (elapsed / 1e9));
+        System.out.printf("Recorded rounds: %d, checksum: %016x%n", history.getRoundCount(), checksum);
+        if (simulation.tournament != null) {
+            Leaderboard leaderboard = simulation.tournament.getLeaderboard();
+            System.out.printf("Tournament %s, %d players, top: %s%n", simulation.tournament.getName(),
+                    leaderboard.getPlayerCount(), String.join(" ", leaderboard.getTop(leaderboard.getTopSize())));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+// Keeps the latest snapshot of each table on disk for crash recovery. The game thread only
+// copies the table's state; one writer thread per store does the disk work. If a table
+// finishes rounds faster than the disk keeps up, only its newest snapshot is written.
+public class SnapshotStore {
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path dir;
+    private final Map<String, TableSnapshot> pending = new ConcurrentHashMap<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "snapshot-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public SnapshotStore(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    // Called at a round boundary on the table's own thread
+    public void save(Table table) {
+        TableSnapshot snapshot = table.snapshot();
+        if (pending.put(snapshot.tableId(), snapshot) == null) {
+            writer.execute(() -> writeLatest(table, snapshot.tableId()));
+        }
+    }
+
+    private void writeLatest(Table table, String tableId) {
+        TableSnapshot snapshot = pending.remove(tableId);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            snapshot.write(path(tableId));
+        } catch (IOException e) {
+            table.log("Can't write snapshot of " + tableId + ": " + e.getMessage());
+        }
+    }
+
+    // The latest snapshot of one table, or null if there is none
+    public TableSnapshot load(String tableId) throws IOException {
+        Path path = path(tableId);
+        return Files.exists(path) ? TableSnapshot.read(path) : null;
+    }
+
+    // Every table's latest snapshot by table id, read in parallel. Unreadable files are skipped.
+    public Map<String, TableSnapshot> loadAll() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(dir)) {
+            paths = files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+        Map<String, TableSnapshot> snapshots = new ConcurrentHashMap<>();
+        paths.parallelStream().forEach(path -> {
+            try {
+                TableSnapshot snapshot = TableSnapshot.read(path);
+                snapshots.put(snapshot.tableId(), snapshot);
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Skipping snapshot " + path + ": " + e.getMessage());
+            }
+        });
+        return snapshots;
+    }
+
+    // Writes whatever is still pending and stops the writer thread
+    public void close() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    // Removes a table's snapshot after a clean shutdown, so only a crash leaves one behind. Call after close.
+    public void discard(String tableId) throws IOException {
+        pending.remove(tableId);
+        Files.deleteIfExists(path(tableId));
+    }
+
+    private Path path(String tableId) {
+        return dir.resolve(tableId + SUFFIX);
+    }
+}
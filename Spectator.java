@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+// A read-only seat. Spectators only receive the public broadcast stream, so there is no
+// thread per spectator. Writes never block the table: whatever the socket doesn't take at
+// once waits in a backlog that the selector loop flushes, and a spectator whose
+// backlog grows past MAX_BACKLOG_BYTES is disconnected instead of holding everyone up.
+public class Spectator {
+    private static final int MAX_BACKLOG_BYTES = Integer.getInteger("blackjack.spectatorBacklog", 256 * 1024);
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final String name;
+    private final Queue<ByteBuffer> backlog = new ArrayDeque<>();
+    private int backlogBytes;
+    private boolean closed;
+
+    public Spectator(SocketChannel channel, SelectionKey key, String name) {
+        this.channel = channel;
+        this.key = key;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Writes an already encoded frame. Returns false if the spectator is gone or too far behind.
+    public synchronized boolean sendFrame(byte[] frame) {
+        if (closed) {
+            return false;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            if (backlog.isEmpty()) {
+                channel.write(buffer);
+            }
+            if (buffer.hasRemaining()) {
+                backlogBytes += buffer.remaining();
+                if (backlogBytes > MAX_BACKLOG_BYTES) {
+                    close();
+                    return false;
+                }
+                backlog.add(buffer);
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            }
+            return true;
+        } catch (IOException e) {
+            close();
+            return false;
+        }
+    }
+
+    // Called by the selector when the socket can take more
+    synchronized void flush() throws IOException {
+        while (!backlog.isEmpty()) {
+            ByteBuffer buffer = backlog.peek();
+            backlogBytes -= channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            backlog.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    public synchronized void close() {
+        closed = true;
+        backlog.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+        }
+    }
+}
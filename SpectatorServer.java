@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+
+// Spectator endpoint on the table's selector loop, which accepts spectators, reads their name
+// line and flushes whatever their sockets couldn't take during a broadcast. Nothing here blocks, so a
+// connection that never sends its name only costs a key, and is dropped after NAME_TIMEOUT_MILLIS.
+public class SpectatorServer {
+
+    private static final long NAME_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_NAME_BYTES = 256;
+
+    private final int port;
+    private final Table table;
+    private final SelectorLoop loop;
+    private final ByteBuffer discard = ByteBuffer.allocate(512);
+
+    public SpectatorServer(int port, Table table, SelectorLoop loop) {
+        this.port = port;
+        this.table = table;
+        this.loop = loop;
+    }
+
+    public void start() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        loop.register(serverChannel, SelectionKey.OP_ACCEPT, key -> accept(serverChannel));
+        loop.everySecond(this::dropUnnamed);
+    }
+
+    // A connection that hasn't sent its name yet
+    private class Unnamed implements SelectorLoop.Handler {
+        final ByteBuffer name = ByteBuffer.allocate(MAX_NAME_BYTES);
+        final long acceptedAt = System.currentTimeMillis();
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            readName(key, this);
+        }
+    }
+
+    private class Watching implements SelectorLoop.Handler {
+        final Spectator spectator;
+
+        Watching(Spectator spectator) {
+            this.spectator = spectator;
+        }
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            if (key.isWritable()) {
+                spectator.flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                readIgnored(key);
+            }
+        }
+
+        @Override
+        public void close(SelectionKey key) {
+            spectator.close();
+            table.removeSpectator(spectator);
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        loop.register(channel, SelectionKey.OP_READ, new Unnamed());
+    }
+
+    // The first line is the spectator's name; once it is complete the spectator joins the table
+    private void readName(SelectionKey key, Unnamed unnamed) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(unnamed.name) < 0) {
+            throw new IOException("Closed before naming");
+        }
+        ByteBuffer buffer = unnamed.name;
+        int end = -1;
+        for (int i = 0; i < buffer.position(); i++) {
+            if (buffer.get(i) == '\n') {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Name too long");
+            }
+            return;
+        }
+        String name = new String(buffer.array(), 0, end, StandardCharsets.UTF_8).strip();
+        Spectator spectator = new Spectator(channel, key, name);
+        key.attach(new Watching(spectator));
+        if (table.addSpectator(spectator)) {
+            table.log("New spectator: " + name + " (" + table.getSpectatorCount() + " watching)");
+        }
+    }
+
+    // Spectators have nothing to say; reading only notices when they hang up
+    private void readIgnored(SelectionKey key) throws IOException {
+        discard.clear();
+        if (((SocketChannel) key.channel()).read(discard) < 0) {
+            throw new IOException("Spectator hung up");
+        }
+    }
+
+    private void dropUnnamed() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : loop.keys()) {
+            if (key.attachment() instanceof Unnamed unnamed && now - unnamed.acceptedAt > NAME_TIMEOUT_MILLIS) {
+                unnamed.close(key);
+            }
+        }
+    }
+}
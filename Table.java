@@ -0,0 +1,575 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.random.RandomGeneratorFactory;
+
+// One blackjack table: its seats, deck, dealer and event stream. A Table has no GUI
+// or sockets of its own, so the Server window and the Simulation drive the same code.
+public class Table {
+
+    private final String tableId;
+    private final int maxPlayers;
+    private final TableHost host;
+    private List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+    private List<Spectator> spectators = new CopyOnWriteArrayList<>();
+    private static final int MAX_SPECTATORS = Integer.getInteger("blackjack.maxSpectators", 500);
+    private Queue<ClientHandler> waitlist = new ConcurrentLinkedQueue<>(); // Seated at the next round
+    private int maxWaitlist = Integer.getInteger("blackjack.waitlist", 8);
+    private final Object seatLock = new Object();
+    private Deck deck;
+    private boolean gameStarted = false;
+    private DealerAI dealer;
+    private GameManager gameManager;
+    private ChatChannel chat;
+    private ProfileStore profiles;
+    private HandHistory history;
+    private OddsCalculator odds = new OddsCalculator(100_000);
+    private boolean clientOdds = Boolean.getBoolean("blackjack.clientOdds"); // Send DEALER_ODDS to players
+    private long eventSeq = 0; // Sequence number of the last public event
+    private long seed;
+    private SplittableRandom tableRng; // Seeds every deck this table uses
+    private int decksDrawn; // Decks seeded from tableRng so far
+    private String rngAlgorithm = System.getProperty("blackjack.rng", "L64X128MixRandom");
+    private final Object broadcastLock = new Object();
+    private Tournament tournament; // null when the table isn't part of a tournament
+    private long sentTopVersion = -1; // Leaderboard top version this table last broadcast
+    private volatile boolean draining; // No new rounds; the table is about to be handed off
+    private volatile String redirectTarget; // host:port players are sent to once the table is handed off
+    private Map<String, TableSnapshot.Seat> reservedSeats = new ConcurrentHashMap<>(); // From an adopted snapshot
+    private SnapshotStore snapshots; // null when the table isn't snapshotted
+    private Executor gameThread = Runnable::run; // Runs player actions; the Server gives each table its own thread
+
+    // profiles may be null
+    public Table(String tableId, int maxPlayers, long seed, ProfileStore profiles, HandHistory history,
+            TableHost host) {
+        this.tableId = tableId;
+        this.maxPlayers = maxPlayers;
+        this.profiles = profiles;
+        this.history = history;
+        this.host = host;
+        this.seed = seed;
+        this.tableRng = new SplittableRandom(seed);
+        gameManager = new GameManager(this);
+        chat = new ChatChannel(this);
+        log("Table seed: " + seed + " (" + rngAlgorithm + ")");
+    }
+
+    // What admit did with a player. The caller closes the connection unless it is SEATED or WAITLISTED.
+    public enum Admission {
+        SEATED, WAITLISTED, REDIRECTED, FULL
+    }
+
+    // Seats the player now if the game hasn't started and a seat is free, otherwise puts them
+    // on the waitlist for the next round. Once the table has been handed off, the player is
+    // sent NEW_PORT and REDIRECTED instead.
+    public Admission admit(ClientHandler client) {
+        synchronized (seatLock) {
+            if (redirectTarget != null) {
+                client.sendMessage("NEW_PORT " + redirectTarget);
+                return Admission.REDIRECTED;
+            }
+            TableSnapshot.Seat reserved = reservedSeats.remove(client.getPlayerName());
+            if (reserved != null && clients.size() < maxPlayers) {
+                // Back after a handoff: the seat is kept for them even between rounds
+                client.restoreSeat(reserved);
+                addClient(client);
+                return Admission.SEATED;
+            }
+            if (!gameStarted && clients.size() < maxPlayers) {
+                addClient(client);
+                return Admission.SEATED;
+            }
+            if (waitlist.size() < maxWaitlist) {
+                waitlist.add(client);
+                client.sendMessage("WAITLISTED " + waitlist.size());
+                log(client.getPlayerName() + " is waiting for a seat (" + waitlist.size() + " waiting)");
+                host.playersChanged();
+                return Admission.WAITLISTED;
+            }
+            return Admission.FULL;
+        }
+    }
+
+    private void addClient(ClientHandler client) {
+        broadcast(client.getPlayerName() + " JOINED");
+        clients.add(client);
+        client.joined();
+        host.playersChanged();
+    }
+
+    // Fills free seats from the waitlist; only called between rounds
+    private void seatWaitlisted() {
+        synchronized (seatLock) {
+            ClientHandler next;
+            while (clients.size() < maxPlayers && (next = waitlist.poll()) != null) {
+                addClient(next);
+            }
+        }
+    }
+
+    // Caps the hands a player may hold so that, keeping one hand for every other seat,
+    // the whole table still deals from one deck (GameManager.MAX_TABLE_HANDS)
+    public int grantHands(ClientHandler client, int requested) {
+        synchronized (seatLock) {
+            int otherHands = 0;
+            int otherPlayers = 0;
+            for (ClientHandler other : clients) {
+                if (other != client) {
+                    otherHands += other.getHandsWanted();
+                    otherPlayers++;
+                }
+            }
+            for (ClientHandler other : waitlist) {
+                if (other != client) {
+                    otherHands += other.getHandsWanted();
+                    otherPlayers++;
+                }
+            }
+            int emptySeats = Math.max(0, maxPlayers - 1 - otherPlayers);
+            int available = GameManager.MAX_TABLE_HANDS - otherHands - emptySeats;
+            return Math.max(1, Math.min(requested, available));
+        }
+    }
+
+    public boolean addSpectator(Spectator spectator) {
+        synchronized (broadcastLock) {
+            if (spectators.size() >= MAX_SPECTATORS) {
+                log("Too many spectators, turned away " + spectator.getName());
+                spectator.sendFrame(ClientHandler.encode("SERVER_FULL"));
+                spectator.close();
+                return false;
+            }
+            // Snapshot and subscription happen under the broadcast lock so no event is missed
+            if (spectator.sendFrame(ClientHandler.encode("SPECTATING"))
+                    && spectator.sendFrame(ClientHandler.encode(buildSnapshot()))) {
+                spectators.add(spectator);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public void removeSpectator(Spectator spectator) {
+        if (spectators.remove(spectator)) {
+            log("Spectator " + spectator.getName() + " left");
+        }
+    }
+
+    public void startGame() {
+        if (gameStarted || draining)
+            return;
+        TableEvents.RoundStart event = new TableEvents.RoundStart();
+        event.begin();
+        gameStarted = true;
+        log("Starting Blackjack game with " + clients.size() + " players!");
+        broadcast("GAME_START");
+
+        deck = newDeck();
+        dealer = new DealerAI(deck);
+
+        gameManager.startGame(clients, deck, dealer);
+        commitRoundStart(event);
+    }
+
+    public void startNewRound() {
+        if (!gameStarted)
+            return;
+        if (draining) {
+            log("Table is draining, no new round");
+            return;
+        }
+        TableEvents.RoundStart event = new TableEvents.RoundStart();
+        event.begin();
+        reservedSeats.clear(); // Players who didn't come back after a handoff lose their seats
+        seatWaitlisted();
+        gameStarted = false;
+        broadcast("REMAINING CARDS: " + deck.getRemainingCards().size());
+        if (deck.getRemainingCards().size() > GameManager.initialCardsNeeded(clients)) {
+            dealer.getCards().clear();
+            gameManager.startNewRound(clients, deck, dealer);
+            gameStarted = true;
+            commitRoundStart(event);
+            return;
+        }
+        log("Starting new round");
+        broadcast("DECK RAN  OUT OF CARD");
+        deck = newDeck();
+        broadcast("NEW DECK CREATED");
+        dealer = new DealerAI(deck);
+        gameManager.startNewRound(clients, deck, dealer);
+        gameStarted = true;
+        log("Starting new round");
+        commitRoundStart(event);
+    }
+
+    private void commitRoundStart(TableEvents.RoundStart event) {
+        if (event.shouldCommit()) {
+            event.tableId = tableId;
+            event.players = clients.size();
+            event.commit();
+        }
+    }
+
+    private Deck newDeck() {
+        long deckSeed = tableRng.nextLong();
+        decksDrawn++;
+        log("New deck, seed " + deckSeed);
+        return new Deck(RandomGeneratorFactory.of(rngAlgorithm).create(deckSeed));
+    }
+
+    public void enableNewRoundButton() {
+        if (snapshots != null) {
+            snapshots.save(this);
+        }
+        host.roundOver();
+    }
+
+    public void broadcastDealerFirstCard(Card card) {
+        broadcast("DEALER_FIRST_CARD " + card.toString());
+        if (clientOdds) {
+            broadcast("DEALER_ODDS " + formatDealerOdds(odds.dealerOutcomes(unseenShoe(), card)));
+        }
+    }
+
+    // Cards the players can't see: what's left in the deck plus the dealer's hole card until it is turned
+    private long unseenShoe() {
+        long shoe = OddsCalculator.shoeKey(deck.getRemainingCards());
+        if (!gameManager.isDealerRevealed() && dealer.getCards().size() > 1) {
+            shoe += OddsCalculator.shoeKey(dealer.getCards().subList(1, 2));
+        }
+        return shoe;
+    }
+
+    private String formatDealerOdds(double[] outcomes) {
+        StringBuilder sb = new StringBuilder();
+        for (int total = 17; total <= 21; total++) {
+            sb.append(total).append(':').append(String.format("%.3f", outcomes[total - 16])).append(' ');
+        }
+        sb.append("BUST:").append(String.format("%.3f", outcomes[OddsCalculator.BUST]));
+        return sb.toString();
+    }
+
+    public String oddsReport() {
+        if (deck == null || dealer == null || dealer.getCards().isEmpty()) {
+            return "No round in progress.";
+        }
+        long shoe = unseenShoe();
+        StringBuilder sb = new StringBuilder("--- Odds, dealer shows " + dealer.getCards().get(0) + " ---\n");
+        sb.append("Dealer: ").append(formatDealerOdds(odds.dealerOutcomes(shoe, dealer.getCards().get(0))));
+        for (ClientHandler client : clients) {
+            for (int hand = 0; hand < client.getHands().size(); hand++) {
+                sb.append(String.format("%n%s busts on hit: %.1f%%", client.getHandLabel(hand),
+                        odds.bustOnHit(shoe, client.getHand(hand).getCards()) * 100));
+            }
+        }
+        return sb.toString();
+    }
+
+    public void broadcast(String message) {
+        synchronized (broadcastLock) {
+            // Encode once and write the same bytes to every player and spectator
+            eventSeq++;
+            broadcastFrame(ClientHandler.encode("SEQ " + eventSeq + " " + message));
+        }
+    }
+
+    // Unsequenced write of an encoded frame to everyone at the table, used directly by chat
+    public void broadcastFrame(byte[] frame) {
+        TableEvents.Broadcast event = new TableEvents.Broadcast();
+        event.begin();
+        for (ClientHandler client : clients) {
+            client.sendFrame(frame);
+        }
+        for (Spectator spectator : spectators) {
+            // Never waits on the socket; a spectator that can't keep up is dropped
+            if (!spectator.sendFrame(frame)) {
+                removeSpectator(spectator);
+            }
+        }
+        if (event.shouldCommit()) {
+            event.tableId = tableId;
+            event.recipients = clients.size() + spectators.size();
+            event.bytes = frame.length;
+            event.commit();
+        }
+    }
+
+    // Public table state as of the last sequenced event: the dealer's visible cards and their score
+    private String buildSnapshot() {
+        StringBuilder sb = new StringBuilder("SNAPSHOT ").append(eventSeq);
+        if (dealer != null && !dealer.getCards().isEmpty()) {
+            if (gameManager.isDealerRevealed()) {
+                sb.append(" ").append(dealer.getCardsAsString()).append(" ").append(dealer.getScore());
+            } else {
+                Card upCard = dealer.getCards().get(0);
+                sb.append(" ").append(upCard).append(" ").append(upCard.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    // Sent on join and whenever a client reports a gap in the event sequence
+    public void sendSnapshot(ClientHandler client) {
+        synchronized (broadcastLock) {
+            client.sendMessage(buildSnapshot());
+            client.sendHands();
+        }
+    }
+
+    // Joins a tournament; every later round's results count towards its leaderboard
+    public void setTournament(Tournament tournament) {
+        this.tournament = tournament;
+    }
+
+    // May be null if the table isn't part of a tournament
+    public Tournament getTournament() {
+        return tournament;
+    }
+
+    // After each round every player gets their own rank. The top list is only broadcast
+    // when some table has changed it since this table last sent it.
+    public void sendStandings() {
+        if (tournament == null || !tournament.hasStarted()) {
+            return;
+        }
+        if (tournament.isRemote()) {
+            List<String> players = new ArrayList<>();
+            for (ClientHandler client : clients) {
+                players.add(client.getPlayerName());
+            }
+            tournament.requestStandings(players);
+            return;
+        }
+        Leaderboard leaderboard = tournament.getLeaderboard();
+        int total = leaderboard.getPlayerCount();
+        for (ClientHandler client : clients) {
+            String name = client.getPlayerName();
+            client.sendMessage("RANK " + leaderboard.getRank(name) + " " + total + " " + leaderboard.getScore(name));
+        }
+        long version = leaderboard.getTopVersion();
+        if (version != sentTopVersion) {
+            sentTopVersion = version;
+            broadcast("TOP " + String.join(" ", leaderboard.getTop(leaderboard.getTopSize())));
+        }
+    }
+
+    // Standings from a remote tournament's leaderboard, on the game thread
+    public void sendRank(String player, int rank, int total, int score) {
+        for (ClientHandler client : clients) {
+            if (client.getPlayerName().equals(player)) {
+                client.sendMessage("RANK " + rank + " " + total + " " + score);
+            }
+        }
+    }
+
+    public void sendTop(long version, String top) {
+        if (version != sentTopVersion) {
+            sentTopVersion = version;
+            broadcast("TOP " + top);
+        }
+    }
+
+    // Copies the table's state. Only consistent between rounds, when no cards are moving.
+    public TableSnapshot snapshot() {
+        synchronized (seatLock) {
+            synchronized (broadcastLock) {
+                List<TableSnapshot.Seat> seats = new ArrayList<>();
+                for (ClientHandler client : clients) {
+                    List<List<Card>> hands = new ArrayList<>();
+                    for (Hand hand : client.getHands()) {
+                        hands.add(new ArrayList<>(hand.getCards()));
+                    }
+                    seats.add(new TableSnapshot.Seat(client.getPlayerName(), client.getHandsWanted(),
+                            client.isIndexedHands(), hands));
+                }
+                List<Card> deckOrder = new ArrayList<>();
+                int deckCursor = 0;
+                if (deck != null) {
+                    deckOrder.addAll(deck.getUsedCards());
+                    deckCursor = deckOrder.size();
+                    deckOrder.addAll(deck.getRemainingCards());
+                }
+                List<Card> dealerCards = (dealer != null) ? new ArrayList<>(dealer.getCards()) : new ArrayList<>();
+                return new TableSnapshot(tableId, seed, decksDrawn, eventSeq, gameStarted, deckOrder, deckCursor,
+                        dealerCards, seats);
+            }
+        }
+    }
+
+    // Takes over a snapshot's shoe, event sequence and seats. Called on a new table before anyone joins;
+    // each seat is held for its player until the next round starts.
+    public void restore(TableSnapshot snapshot) {
+        seed = snapshot.seed();
+        tableRng = new SplittableRandom(seed);
+        for (decksDrawn = 0; decksDrawn < snapshot.decksDrawn(); decksDrawn++) {
+            tableRng.nextLong();
+        }
+        eventSeq = snapshot.eventSeq();
+        if (!snapshot.deck().isEmpty()) {
+            deck = new Deck(snapshot.deck(), snapshot.deckCursor());
+            dealer = new DealerAI(deck);
+            for (Card card : snapshot.dealerCards()) {
+                dealer.addCard(card);
+            }
+        }
+        gameStarted = snapshot.gameStarted() && deck != null;
+        if (gameStarted) {
+            gameManager.restoreRoundOver();
+        }
+        for (TableSnapshot.Seat seat : snapshot.seats()) {
+            reservedSeats.put(seat.name(), seat);
+        }
+        log("Restored " + snapshot.tableId() + ": " + snapshot.seats().size() + " seats, "
+                + (deck != null ? deck.cardsLeft() : 0) + " cards left in the shoe, event " + eventSeq);
+    }
+
+    // Saves the table to the store after every round from now on
+    public void setSnapshotStore(SnapshotStore snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    // Stops new rounds; the round in progress plays out
+    public void drain() {
+        draining = true;
+        log("Draining: no new rounds will start");
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    // Sends every player and spectator to another server, along with anyone who joins from now on
+    public void redirect(String target) {
+        synchronized (seatLock) {
+            redirectTarget = target;
+            byte[] frame = ClientHandler.encode("NEW_PORT " + target);
+            for (ClientHandler client : waitlist) {
+                client.sendFrame(frame);
+            }
+            broadcastFrame(frame);
+        }
+        log("Sent players to " + target);
+    }
+
+    // Stops the table's background work; connections are left to their owners
+    public void close() {
+        chat.close();
+    }
+
+    public String getTableId() {
+        return tableId;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public boolean isGameStarted() {
+        return gameStarted;
+    }
+
+    public boolean isRoundOver() {
+        return gameManager.isRoundOver();
+    }
+
+    public int getWaitlistSize() {
+        return waitlist.size();
+    }
+
+    public int getMaxWaitlist() {
+        return maxWaitlist;
+    }
+
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    // May be null if the table runs without profiles
+    public ProfileStore getProfiles() {
+        return profiles;
+    }
+
+    public HandHistory getHistory() {
+        return history;
+    }
+
+    public ChatChannel getChat() {
+        return chat;
+    }
+
+    public Deck getDeck() {
+        return deck;
+    }
+
+    public void log(String message) {
+        host.log(message);
+    }
+
+    // Connections hand their lines over here instead of playing them on their own I/O thread,
+    // so actions are applied one at a time and a socket never waits on the game
+    public void execute(Runnable action) {
+        gameThread.execute(() -> {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                log("Error in game action: " + e);
+            }
+        });
+    }
+
+    public void setGameThread(Executor gameThread) {
+        this.gameThread = gameThread;
+    }
+
+    // hand is -1 for whichever of the client's hands has the turn
+    public void handleClientAction(ClientHandler client, int hand, String action) {
+        if (!clients.contains(client)) {
+            return; // Still on the waitlist
+        }
+        TableEvents.PlayerAction event = new TableEvents.PlayerAction();
+        event.begin();
+        gameManager.handlePlayerAction(client, hand, action);
+        if (event.shouldCommit()) {
+            event.tableId = tableId;
+            event.player = client.getPlayerName();
+            event.action = action;
+            event.commit();
+        }
+    }
+
+    public void removeClient(ClientHandler client) {
+        if (waitlist.remove(client)) {
+            host.playerLeft(client);
+            host.playersChanged();
+            return;
+        }
+        clients.remove(client);
+        if (!gameStarted) {
+            seatWaitlisted();
+        }
+        host.playerLeft(client);
+        host.playersChanged();
+        broadcast(client.getPlayerName() + " LEFT");
+        if (gameStarted) {
+            gameManager.playerLeft(client);
+        }
+    }
+
+    public void sendMessageToClient(ClientHandler client, String message) {
+        client.sendMessage(message);
+    }
+
+    public void broadcastFromGameManager(String message) {
+        broadcast(message);
+    }
+
+    public List<ClientHandler> getClients() {
+        return clients;
+    }
+
+    public DealerAI getDealer() {
+        return dealer;
+    }
+}
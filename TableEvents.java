@@ -0,0 +1,80 @@
+import jdk.jfr.*;
+
+// Flight Recorder events for a table's round lifecycle. Callers create an event, call
+// begin(), and fill in fields only if shouldCommit() is true, so a disabled event costs
+// close to nothing. Record with -XX:StartFlightRecording and read with "jfr print".
+public class TableEvents {
+
+    private TableEvents() {
+    }
+
+    @Name("blackjack.Handshake")
+    @Label("Player Handshake")
+    @Category("Blackjack")
+    @Description("Redirect, reconnect and name exchange for a joining player")
+    public static class Handshake extends Event {
+        @Label("Table")
+        public String tableId;
+        @Label("Player")
+        public String player;
+        @Label("Transport")
+        public String transport;
+    }
+
+    @Name("blackjack.RoundStart")
+    @Label("Round Start")
+    @Category("Blackjack")
+    @Description("Seating, shuffling if needed and dealing the opening cards")
+    public static class RoundStart extends Event {
+        @Label("Table")
+        public String tableId;
+        @Label("Players")
+        public int players;
+    }
+
+    @Name("blackjack.PlayerAction")
+    @Label("Player Action")
+    @Category("Blackjack")
+    public static class PlayerAction extends Event {
+        @Label("Table")
+        public String tableId;
+        @Label("Player")
+        public String player;
+        @Label("Action")
+        public String action;
+    }
+
+    @Name("blackjack.DealerPlay")
+    @Label("Dealer Play")
+    @Category("Blackjack")
+    public static class DealerPlay extends Event {
+        @Label("Table")
+        public String tableId;
+        @Label("Dealer Score")
+        public int dealerScore;
+    }
+
+    @Name("blackjack.DetermineWinners")
+    @Label("Determine Winners")
+    @Category("Blackjack")
+    public static class DetermineWinners extends Event {
+        @Label("Table")
+        public String tableId;
+        @Label("Players")
+        public int players;
+    }
+
+    @Name("blackjack.Broadcast")
+    @Label("Broadcast")
+    @Category("Blackjack")
+    @Description("Writing one frame to every player and spectator at a table")
+    public static class Broadcast extends Event {
+        @Label("Table")
+        public String tableId;
+        @Label("Recipients")
+        public int recipients;
+        @Label("Frame Size")
+        @DataAmount
+        public int bytes;
+    }
+}
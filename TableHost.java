@@ -0,0 +1,12 @@
+// What a Table needs from whatever is running it: the Server window, or a simulation.
+public interface TableHost {
+
+    void log(String message);
+
+    // The dealer has played and results are out; a new round may be started
+    void roundOver();
+
+    void playersChanged();
+
+    void playerLeft(ClientHandler client);
+}
@@ -0,0 +1,120 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// A table's state at a round boundary, small enough to write every round: the shoe in
+// order with its cursor, the dealer's last hand, every seat and where the table's event
+// sequence and deck seeds had got to. Cards are stored as one byte each.
+//
+// A snapshot only holds copies, so it can be written out on any thread while the table plays on.
+public record TableSnapshot(String tableId, long seed, int decksDrawn, long eventSeq, boolean gameStarted,
+        List<Card> deck, int deckCursor, List<Card> dealerCards, List<Seat> seats) {
+
+    private static final int MAGIC = 0x424a5453; // "BJTS"
+    private static final int VERSION = 2; // 2 added Seat.indexedHands
+
+    // A seated player: their name, how many hands they play, whether their client numbers its
+    // hand messages (it sent HANDS), and the cards of each hand
+    public record Seat(String name, int handsWanted, boolean indexedHands, List<List<Card>> hands) {
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(tableId);
+            out.writeLong(seed);
+            out.writeInt(decksDrawn);
+            out.writeLong(eventSeq);
+            out.writeBoolean(gameStarted);
+            writeCards(out, deck);
+            out.writeByte(deckCursor);
+            writeCards(out, dealerCards);
+            out.writeByte(seats.size());
+            for (Seat seat : seats) {
+                out.writeUTF(seat.name());
+                out.writeByte(seat.handsWanted());
+                out.writeBoolean(seat.indexedHands());
+                out.writeByte(seat.hands().size());
+                for (List<Card> hand : seat.hands()) {
+                    writeCards(out, hand);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Can't happen writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    public static TableSnapshot fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a table snapshot");
+        }
+        int version = in.readByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unknown table snapshot version " + version);
+        }
+        String tableId = in.readUTF();
+        long seed = in.readLong();
+        int decksDrawn = in.readInt();
+        long eventSeq = in.readLong();
+        boolean gameStarted = in.readBoolean();
+        List<Card> deck = readCards(in);
+        int deckCursor = in.readUnsignedByte();
+        List<Card> dealerCards = readCards(in);
+        int seatCount = in.readUnsignedByte();
+        List<Seat> seats = new ArrayList<>(seatCount);
+        for (int i = 0; i < seatCount; i++) {
+            String name = in.readUTF();
+            int handsWanted = in.readUnsignedByte();
+            // Version 1 didn't record it; only clients that sent HANDS hold more than one hand
+            boolean indexedHands = (version >= 2) ? in.readBoolean() : handsWanted > 1;
+            int handCount = in.readUnsignedByte();
+            List<List<Card>> hands = new ArrayList<>(handCount);
+            for (int h = 0; h < handCount; h++) {
+                hands.add(readCards(in));
+            }
+            seats.add(new Seat(name, handsWanted, indexedHands, hands));
+        }
+        return new TableSnapshot(tableId, seed, decksDrawn, eventSeq, gameStarted, deck, deckCursor, dealerCards,
+                seats);
+    }
+
+    // Written to a temporary file and moved into place, so a reader never sees half a snapshot
+    public void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, toBytes());
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static TableSnapshot read(Path path) throws IOException {
+        return fromBytes(Files.readAllBytes(path));
+    }
+
+    private static void writeCards(DataOutputStream out, List<Card> cards) throws IOException {
+        out.writeByte(cards.size());
+        for (Card card : cards) {
+            out.writeByte(cardIndex(card));
+        }
+    }
+
+    private static List<Card> readCards(DataInputStream in) throws IOException {
+        int count = in.readUnsignedByte();
+        List<Card> cards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = in.readUnsignedByte();
+            if (index >= Deck.SUITS.length * Deck.RANKS.length) {
+                throw new IOException("Bad card in snapshot: " + index);
+            }
+            cards.add(new Card(Deck.SUITS[index / Deck.RANKS.length], Deck.RANKS[index % Deck.RANKS.length]));
+        }
+        return cards;
+    }
+
+    private static int cardIndex(Card card) {
+        return Arrays.asList(Deck.SUITS).indexOf(card.getSuit()) * Deck.RANKS.length
+                + Arrays.asList(Deck.RANKS).indexOf(card.getRank());
+    }
+}
@@ -0,0 +1,117 @@
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Writes go through a bounded queue to a writer thread of their own, so the table never waits on
+// this socket. A peer that stops reading until the queue is full is disconnected. With the
+// ClientHandler reading, a TCP player costs two threads; spectators and browsers cost none.
+public class TcpTransport implements Transport {
+    // on, off, or remote to compress only for peers on another host
+    private static final String COMPRESSION = System.getProperty("blackjack.compression", "remote");
+    private static final int MAX_QUEUED_FRAMES = Integer.getInteger("blackjack.sendQueue", 1024);
+    // Markers in the send queue, compared by identity
+    private static final byte[] START_DEFLATE = new byte[0];
+    private static final byte[] CLOSE = new byte[0];
+
+    private Socket socket;
+    private BufferedReader input;
+    private OutputStream output;
+    private Deflater deflater;
+    private final BlockingQueue<byte[]> outgoing = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+    private volatile boolean closed;
+
+    public TcpTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        this.input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.output = socket.getOutputStream();
+        Thread writer = new Thread(this::writeLoop, "tcp-writer-" + socket.getLocalPort());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        return input.readLine();
+    }
+
+    @Override
+    public void write(byte[] frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        if (!outgoing.offer(frame)) {
+            closeNow();
+            throw new IOException("Fell " + MAX_QUEUED_FRAMES + " frames behind, disconnected");
+        }
+    }
+
+    // Frames are flushed once the queue is empty, with a sync flush when compressing: the client can
+    // inflate everything sent so far, and the dictionary is kept for the next frame
+    private void writeLoop() {
+        try {
+            while (true) {
+                byte[] frame = outgoing.take();
+                if (frame == CLOSE) {
+                    break;
+                }
+                if (frame == START_DEFLATE) {
+                    deflater = new Deflater(Deflater.BEST_SPEED);
+                    output = new DeflaterOutputStream(socket.getOutputStream(), deflater, 512, true);
+                    continue;
+                }
+                output.write(frame);
+                if (outgoing.isEmpty()) {
+                    output.flush();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // The reader sees the socket fail and the player is removed from there
+        } finally {
+            closeNow();
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    @Override
+    public boolean startCompression(byte[] acknowledgement) throws IOException {
+        if (COMPRESSION.equals("off")
+                || (COMPRESSION.equals("remote") && socket.getInetAddress().isLoopbackAddress())) {
+            return false;
+        }
+        // The acknowledgement goes out plain and everything queued after it is deflated
+        write(acknowledgement);
+        write(START_DEFLATE);
+        return true;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return socket.getLocalPort();
+    }
+
+    // Anything already queued, such as a last SERVER_FULL, is still written before the socket closes
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!outgoing.offer(CLOSE)) {
+            closeNow();
+        }
+    }
+
+    private void closeNow() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+// A tournament runs over any number of tables in one process between a start and an end time.
+// Each finished hand scores WIN 2, PUSH 1 and LOSS 0 points on a shared Leaderboard.
+// Tables in several processes share a tournament kept by the router; their Tournament is
+// then remote, and only passes results on and asks for standings.
+public class Tournament {
+
+    // Where the leaderboard lives when it isn't in this process
+    public interface Remote {
+        void record(String player, byte outcome);
+
+        // The answer comes back later, through Table.sendRank and Table.sendTop
+        void requestStandings(List<String> players);
+    }
+
+    private final String name;
+    private final long startMillis;
+    private final long endMillis;
+    private final Leaderboard leaderboard = new Leaderboard(10);
+    private final Remote remote; // null when the leaderboard is local
+
+    public Tournament(String name, long startMillis, long endMillis) {
+        this(name, startMillis, endMillis, null);
+    }
+
+    public Tournament(String name, long startMillis, long endMillis, Remote remote) {
+        this.name = name;
+        this.startMillis = startMillis;
+        this.endMillis = endMillis;
+        this.remote = remote;
+    }
+
+    // Epoch millis or a local time like 2026-10-20T18:00; null means now
+    public static long parseStart(String start) {
+        if (start == null) {
+            return System.currentTimeMillis();
+        }
+        return start.chars().allMatch(Character::isDigit) ? Long.parseLong(start)
+                : LocalDateTime.parse(start).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public boolean isRunning() {
+        long now = System.currentTimeMillis();
+        return now >= startMillis && now < endMillis;
+    }
+
+    public boolean hasStarted() {
+        return System.currentTimeMillis() >= startMillis;
+    }
+
+    public void record(String player, byte outcome) {
+        if (!isRunning()) {
+            return;
+        }
+        if (remote != null) {
+            remote.record(player, outcome);
+            return;
+        }
+        int points = (outcome == HandHistory.WIN) ? 2 : (outcome == HandHistory.PUSH) ? 1 : 0;
+        leaderboard.addPoints(player, points);
+    }
+
+    public boolean isRemote() {
+        return remote != null;
+    }
+
+    public void requestStandings(List<String> players) {
+        remote.requestStandings(players);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getEndMillis() {
+        return endMillis;
+    }
+
+    // Empty for a remote tournament
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+}
@@ -0,0 +1,22 @@
+import java.io.IOException;
+
+// The connection under a ClientHandler: lines in, encoded frames out.
+public interface Transport {
+
+    // Next line from the peer, or null once the connection is closed
+    String readLine() throws IOException;
+
+    // Writes an encoded frame (one or more newline terminated lines)
+    void write(byte[] frame) throws IOException;
+
+    int getLocalPort();
+
+    // If this transport compresses, writes the acknowledgement as-is and deflates everything
+    // after it. The peer reads the rest of the stream through one Inflater, so the dictionary
+    // carries across messages. Returns false, writing nothing, if it doesn't.
+    default boolean startCompression(byte[] acknowledgement) throws IOException {
+        return false;
+    }
+
+    void close();
+}
@@ -0,0 +1,412 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// WebSocket endpoint for browser players. The table's selector loop handles the HTTP upgrade,
+// frame decoding and writes for every browser session, so a browser costs no thread.
+// The first text message is the player's name, like the first line on a TCP connection, and
+// the player is admitted on the server's join threads. Every later message is one command line,
+// handed to the table's game thread, so the selector never waits on the game. Fragmented
+// messages are reassembled; binary ones are refused.
+// Writes never block the table either: what a browser's socket doesn't take waits in the
+// session, and a browser that falls more than MAX_BACKLOG_BYTES behind is closed with 1008.
+public class WebSocketGateway {
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final int MAX_MESSAGE_BYTES = 4096;
+    private static final int MAX_BACKLOG_BYTES = Integer.getInteger("blackjack.browserBacklog", 256 * 1024);
+    private static final int MAX_EARLY_LINES = 64; // Sent before the player is admitted
+
+    private final int port;
+    private final Table table;
+    private final Executor admissions;
+    private final SelectorLoop loop;
+
+    public WebSocketGateway(int port, Table table, Executor admissions, SelectorLoop loop) {
+        this.port = port;
+        this.table = table;
+        this.admissions = admissions;
+        this.loop = loop;
+    }
+
+    public void start() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        loop.register(serverChannel, SelectionKey.OP_ACCEPT, key -> accept(serverChannel));
+        table.log("Browser players can connect to ws://localhost:" + port + "/");
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        SelectionKey key = loop.register(channel, SelectionKey.OP_READ, null);
+        key.attach(new Session(channel, key));
+    }
+
+    // One browser connection: its read buffer, outgoing frames and, once named, its ClientHandler
+    private class Session implements Transport, SelectorLoop.Handler {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(1024);
+        private final Queue<ByteBuffer> out = new ArrayDeque<>();
+        private int outBytes;
+        private boolean upgraded;
+        private String pendingName;
+        private ClientHandler handler;
+        private List<String> early; // Lines that came while the player was being admitted
+        private boolean left;
+        private volatile boolean closed;
+        private ByteArrayOutputStream fragments; // A text message still missing its final frame
+
+        Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        @Override
+        public void ready(SelectionKey key) throws IOException {
+            if (key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        }
+
+        @Override
+        public void close(SelectionKey key) {
+            close();
+        }
+
+        void read() throws IOException {
+            if (!in.hasRemaining()) {
+                if (in.capacity() >= MAX_REQUEST_BYTES + MAX_MESSAGE_BYTES) {
+                    throw new IOException("Message too large");
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+            if (channel.read(in) < 0) {
+                throw new IOException("Closed by browser");
+            }
+            in.flip();
+            if (!upgraded) {
+                upgrade();
+            }
+            while (upgraded && !closed && readFrame()) {
+            }
+            in.compact();
+            if (closed) {
+                closeWhenFlushed();
+            }
+        }
+
+        private synchronized void closeWhenFlushed() {
+            if (out.isEmpty()) {
+                close();
+            }
+        }
+
+        // Answers the HTTP upgrade request once all of its headers have arrived
+        private void upgrade() throws IOException {
+            String request = StandardCharsets.ISO_8859_1.decode(in.duplicate()).toString();
+            int end = request.indexOf("\r\n\r\n");
+            if (end < 0) {
+                if (in.remaining() > MAX_REQUEST_BYTES) {
+                    throw new IOException("Request too large");
+                }
+                return;
+            }
+            in.position(in.position() + end + 4);
+            String webSocketKey = null;
+            for (String header : request.substring(0, end).split("\r\n")) {
+                int colon = header.indexOf(':');
+                if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+                    webSocketKey = header.substring(colon + 1).trim();
+                }
+            }
+            if (webSocketKey == null) {
+                send(ByteBuffer.wrap("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.ISO_8859_1)));
+                closed = true;
+                return;
+            }
+            send(ByteBuffer.wrap(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + acceptKey(webSocketKey) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1)));
+            upgraded = true;
+        }
+
+        // Decodes one complete frame if there is one in the buffer
+        private boolean readFrame() throws IOException {
+            if (in.remaining() < 2) {
+                return false;
+            }
+            int start = in.position();
+            boolean fin = (in.get(start) & 0x80) != 0;
+            int opcode = in.get(start) & 0x0F;
+            boolean masked = (in.get(start + 1) & 0x80) != 0;
+            long length = in.get(start + 1) & 0x7F;
+            int headerLength = 2;
+            if (length == 126) {
+                if (in.remaining() < 4) {
+                    return false;
+                }
+                length = in.getShort(start + 2) & 0xFFFF;
+                headerLength = 4;
+            } else if (length == 127) {
+                if (in.remaining() < 10) {
+                    return false;
+                }
+                length = in.getLong(start + 2);
+                headerLength = 10;
+            }
+            if (!masked || length > MAX_MESSAGE_BYTES) {
+                throw new IOException("Bad frame from browser");
+            }
+            if (in.remaining() < headerLength + 4 + length) {
+                return false;
+            }
+            byte[] mask = new byte[4];
+            in.position(start + headerLength);
+            in.get(mask);
+            byte[] payload = new byte[(int) length];
+            in.get(payload);
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+
+            switch (opcode) {
+                case 0x0 -> {
+                    if (fragments == null) {
+                        throw new IOException("Continuation without a message");
+                    }
+                    fragments.write(payload);
+                    if (fragments.size() > MAX_MESSAGE_BYTES) {
+                        throw new IOException("Message too large");
+                    }
+                    if (fin) {
+                        String text = fragments.toString(StandardCharsets.UTF_8);
+                        fragments = null;
+                        onText(text);
+                    }
+                }
+                case 0x1 -> {
+                    if (fin) {
+                        onText(new String(payload, StandardCharsets.UTF_8));
+                    } else {
+                        fragments = new ByteArrayOutputStream();
+                        fragments.write(payload);
+                    }
+                }
+                case 0x2 -> {
+                    // 1003: this endpoint only takes text
+                    send(frame(0x8, new byte[] { 0x03, (byte) 0xEB }));
+                    closed = true;
+                    disconnected();
+                }
+                case 0x8 -> {
+                    send(frame(0x8, new byte[0]));
+                    closed = true;
+                    disconnected();
+                }
+                case 0x9 -> send(frame(0xA, payload));
+                default -> {
+                }
+            }
+            return true;
+        }
+
+        private synchronized void onText(String text) throws IOException {
+            for (String line : text.split("\n")) {
+                if (closed) {
+                    return; // Turned away, or the browser is going
+                }
+                if (handler != null) {
+                    ClientHandler player = handler;
+                    table.execute(() -> player.handleLine(line));
+                } else if (early != null) {
+                    if (early.size() >= MAX_EARLY_LINES) {
+                        throw new IOException("Too many lines before joining");
+                    }
+                    early.add(line);
+                } else if (line.isBlank() || line.startsWith("COMPRESS ")) {
+                    // 1008: the first message must be a name, and browsers get no compression
+                    send(frame(0x8, new byte[] { 0x03, (byte) 0xF0 }));
+                    closed = true;
+                } else {
+                    early = new ArrayList<>();
+                    try {
+                        admissions.execute(() -> join(line));
+                    } catch (RejectedExecutionException e) {
+                        table.log("Too many pending joins. Browser refused.");
+                        write(ClientHandler.encode("SERVER_FULL"));
+                        closed = true;
+                    }
+                }
+            }
+        }
+
+        // Runs on a join thread: the profile lookup and seating may wait on locks
+        private void join(String name) {
+            TableEvents.Handshake event = new TableEvents.Handshake();
+            event.begin();
+            pendingName = name;
+            ClientHandler player = new ClientHandler(this, table);
+            Table.Admission admission = (player.getPlayerName() != null) ? table.admit(player) : null;
+            boolean admitted = admission == Table.Admission.SEATED || admission == Table.Admission.WAITLISTED;
+            synchronized (this) {
+                if (!admitted) {
+                    if (admission == Table.Admission.FULL) {
+                        player.sendMessage("SERVER_FULL");
+                    }
+                    closed = true;
+                    closeWhenFlushed();
+                } else if (left) {
+                    table.log(player.getPlayerName() + " left from the browser");
+                    table.execute(() -> table.removeClient(player));
+                } else {
+                    handler = player;
+                    for (String line : early) {
+                        table.execute(() -> player.handleLine(line));
+                    }
+                }
+                early = null;
+            }
+            if (event.shouldCommit()) {
+                event.tableId = table.getTableId();
+                event.player = name;
+                event.transport = "websocket";
+                event.commit();
+            }
+        }
+
+        private synchronized void disconnected() {
+            left = true;
+            if (handler != null) {
+                ClientHandler player = handler;
+                table.log(player.getPlayerName() + " left from the browser");
+                table.execute(() -> table.removeClient(player));
+                handler = null;
+            }
+        }
+
+        // Writes directly while the socket keeps up and queues the rest for the selector
+        synchronized void send(ByteBuffer buffer) throws IOException {
+            if (!channel.isOpen()) {
+                throw new IOException("Connection closed");
+            }
+            if (out.isEmpty()) {
+                channel.write(buffer);
+            }
+            if (buffer.hasRemaining()) {
+                outBytes += buffer.remaining();
+                if (outBytes > MAX_BACKLOG_BYTES) {
+                    // 1008: policy violation. It can only go out between two frames.
+                    ByteBuffer head = out.isEmpty() ? buffer : out.peek();
+                    out.clear();
+                    if (head.position() == 0) {
+                        channel.write(frame(0x8, new byte[] { 0x03, (byte) 0xF0 }));
+                    }
+                    close();
+                    throw new IOException("Fell " + MAX_BACKLOG_BYTES + " bytes behind, disconnected");
+                }
+                out.add(buffer);
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                key.selector().wakeup();
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            while (!out.isEmpty()) {
+                ByteBuffer buffer = out.peek();
+                outBytes -= channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return;
+                }
+                out.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (closed) {
+                close();
+            }
+        }
+
+        // Only the constructor of ClientHandler reads, to get the name from the first message
+        @Override
+        public String readLine() {
+            String name = pendingName;
+            pendingName = null;
+            return name;
+        }
+
+        // Each line of a frame becomes its own text message
+        @Override
+        public void write(byte[] frame) throws IOException {
+            int start = 0;
+            for (int i = 0; i < frame.length; i++) {
+                if (frame[i] == '\n') {
+                    send(frame(0x1, Arrays.copyOfRange(frame, start, i)));
+                    start = i + 1;
+                }
+            }
+        }
+
+        @Override
+        public int getLocalPort() {
+            return port;
+        }
+
+        @Override
+        public synchronized void close() {
+            disconnected();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+        }
+    }
+
+    // Server frames are never masked
+    private static ByteBuffer frame(int opcode, byte[] payload) {
+        int headerLength = (payload.length < 126) ? 2 : (payload.length <= 0xFFFF) ? 4 : 10;
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + payload.length);
+        buffer.put((byte) (0x80 | opcode));
+        if (payload.length < 126) {
+            buffer.put((byte) payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            buffer.put((byte) 126);
+            buffer.putShort((short) payload.length);
+        } else {
+            buffer.put((byte) 127);
+            buffer.putLong(payload.length);
+        }
+        buffer.put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static String acceptKey(String webSocketKey) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((webSocketKey + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}